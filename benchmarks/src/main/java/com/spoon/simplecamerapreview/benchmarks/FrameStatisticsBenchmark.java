@@ -0,0 +1,63 @@
+package com.spoon.simplecamerapreview.benchmarks;
+
+import com.spoon.simplecamerapreview.FrameStatistics;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The luminance statistics startAnalysis computes on every analysis frame. Run with -prof gc to check that they do
+ * not allocate.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FrameStatisticsBenchmark {
+
+    @Param({"320", "640", "1280"})
+    public int width;
+
+    @Param({"1", "2", "4"})
+    public int step;
+
+    private final FrameStatistics statistics = new FrameStatistics();
+    private final double[] folded = new double[32];
+    private byte[] plane;
+    private int height;
+    private int rowStride;
+
+    @Setup
+    public void setUp() {
+        height = YPlanes.heightFor(width);
+        rowStride = width + 64;
+        plane = YPlanes.textured(width, height, rowStride, 1);
+    }
+
+    @Benchmark
+    public double compute() {
+        statistics.compute(plane, width, height, rowStride, step);
+        return statistics.getMeanLuma();
+    }
+
+    /**
+     * compute() followed by the 32 bin histogram startAnalysis reports.
+     */
+    @Benchmark
+    public double[] computeAndFold() {
+        statistics.compute(plane, width, height, rowStride, step);
+        statistics.foldHistogram(folded, folded.length);
+        return folded;
+    }
+}
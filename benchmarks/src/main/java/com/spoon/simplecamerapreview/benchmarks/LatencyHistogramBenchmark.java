@@ -0,0 +1,70 @@
+package com.spoon.simplecamerapreview.benchmarks;
+
+import com.spoon.simplecamerapreview.LatencyHistogram;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The cost CameraMetrics adds to every camera operation, and the cost of the getMetrics snapshot. Run with
+ * -prof gc to check that record() does not allocate.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LatencyHistogramBenchmark {
+
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    @State(Scope.Thread)
+    public static class Latencies {
+        private long next = 1;
+
+        /**
+         * Latencies in milliseconds from 1 to about 4 s, spread over many buckets.
+         */
+        long next() {
+            next = (next * 1103515245L + 12345L) & 0xFFF;
+            return next;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        Latencies latencies = new Latencies();
+        for (int i = 0; i < 10_000; i++) {
+            histogram.record(latencies.next());
+        }
+    }
+
+    @Benchmark
+    public void record(Latencies latencies) {
+        histogram.record(latencies.next());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordContended(Latencies latencies) {
+        histogram.record(latencies.next());
+    }
+
+    /**
+     * The three percentiles getMetrics reports for each stage.
+     */
+    @Benchmark
+    public double percentiles() {
+        return histogram.getPercentile(0.5) + histogram.getPercentile(0.9) + histogram.getPercentile(0.99);
+    }
+}
@@ -0,0 +1,52 @@
+package com.spoon.simplecamerapreview.benchmarks;
+
+import com.spoon.simplecamerapreview.PreviewOptions;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The option parsing enable and switchCameraTo run once per call.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PreviewOptionsBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class AspectRatioInput {
+        @Param({"3:4", "9:16", "null", "wide"})
+        public String value;
+    }
+
+    @State(Scope.Benchmark)
+    public static class TargetSizeInput {
+        @Param({"1920", "null"})
+        public String value;
+    }
+
+    @Benchmark
+    public double parseAspectRatio(AspectRatioInput aspectRatio) {
+        return PreviewOptions.parseAspectRatio(aspectRatio.value);
+    }
+
+    @Benchmark
+    public int parseTargetSize(TargetSizeInput targetSize) {
+        return PreviewOptions.parseTargetSize(targetSize.value);
+    }
+
+    @Benchmark
+    public boolean parseAndChooseSensorRatio(AspectRatioInput aspectRatio) {
+        return PreviewOptions.isCloserTo3By4(PreviewOptions.parseAspectRatio(aspectRatio.value));
+    }
+}
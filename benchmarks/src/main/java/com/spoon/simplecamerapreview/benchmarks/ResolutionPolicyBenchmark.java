@@ -0,0 +1,68 @@
+package com.spoon.simplecamerapreview.benchmarks;
+
+import com.spoon.simplecamerapreview.PreviewOptions;
+import com.spoon.simplecamerapreview.ResolutionPolicy;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The JPEG size selection setUpCamera runs when the camera, aspect ratio, target size or policy changes, over the
+ * size table of a real device.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResolutionPolicyBenchmark {
+
+    @Param({SizeTables.PIXEL_6_BACK})
+    public String sizeTable;
+
+    @Param({ResolutionPolicy.MAX_QUALITY, ResolutionPolicy.BALANCED, ResolutionPolicy.FASTEST})
+    public String policyName;
+
+    @Param({"3:4", "9:16"})
+    public String aspectRatio;
+
+    @Param({"0", "1920"})
+    public int targetWidth;
+
+    private List<ResolutionPolicy.Candidate> candidates;
+    private ResolutionPolicy policy;
+    private double parsedAspectRatio;
+
+    @Setup
+    public void setUp() {
+        candidates = SizeTables.load(sizeTable);
+        policy = ResolutionPolicy.fromName(policyName);
+        parsedAspectRatio = PreviewOptions.parseAspectRatio(aspectRatio);
+    }
+
+    @Benchmark
+    public ResolutionPolicy.Candidate select() {
+        return policy.select(candidates, parsedAspectRatio, targetWidth);
+    }
+
+    /**
+     * Everything a switchCameraTo that changes the aspect ratio does before binding: parse the options, pick the
+     * policy and select the size.
+     */
+    @Benchmark
+    public ResolutionPolicy.Candidate parseAndSelect() {
+        ResolutionPolicy resolutionPolicy = ResolutionPolicy.fromName(PreviewOptions.parseResolutionPolicy(policyName));
+        return resolutionPolicy.select(candidates, PreviewOptions.parseAspectRatio(aspectRatio), targetWidth);
+    }
+}
@@ -0,0 +1,57 @@
+package com.spoon.simplecamerapreview.benchmarks;
+
+import com.spoon.simplecamerapreview.SharpnessScorer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The sharpness and motion scoring autoCapture and bestShot run on every analysis frame. Alternating between two
+ * frames keeps the motion term busy. Run with -prof gc to check that scoring does not allocate once warm.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SharpnessScorerBenchmark {
+
+    @Param({"320", "640", "1280"})
+    public int width;
+
+    @Param({"1", "2", "4"})
+    public int factor;
+
+    private SharpnessScorer scorer;
+    private byte[][] frames;
+    private int height;
+    private int rowStride;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        height = YPlanes.heightFor(width);
+        rowStride = width + 64;
+        frames = new byte[][]{
+                YPlanes.textured(width, height, rowStride, 1),
+                YPlanes.textured(width, height, rowStride, 2)
+        };
+        scorer = new SharpnessScorer(factor);
+    }
+
+    @Benchmark
+    public double score() {
+        next ^= 1;
+        return scorer.score(frames[next], width, height, rowStride) + scorer.getMotion();
+    }
+}
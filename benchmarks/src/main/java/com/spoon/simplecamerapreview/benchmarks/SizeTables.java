@@ -0,0 +1,52 @@
+package com.spoon.simplecamerapreview.benchmarks;
+
+import com.spoon.simplecamerapreview.ResolutionPolicy;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JPEG size tables of real devices, read from the size-tables resources. Each line holds
+ * width,height,stallDurationNs,minFrameDurationNs in the order the device lists its sizes, and lines starting with
+ * # are comments.
+ */
+public final class SizeTables {
+
+    public static final String PIXEL_6_BACK = "pixel6-back";
+
+    private SizeTables() {
+    }
+
+    public static List<ResolutionPolicy.Candidate> load(String name) {
+        String resource = "/size-tables/" + name + ".csv";
+        InputStream input = SizeTables.class.getResourceAsStream(resource);
+        if (input == null) {
+            throw new IllegalArgumentException("Unknown size table " + name);
+        }
+
+        List<ResolutionPolicy.Candidate> candidates = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                candidates.add(new ResolutionPolicy.Candidate(
+                        Integer.parseInt(fields[0]),
+                        Integer.parseInt(fields[1]),
+                        Long.parseLong(fields[2]),
+                        Long.parseLong(fields[3])
+                ));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to read size table " + name, e);
+        }
+        return candidates;
+    }
+}
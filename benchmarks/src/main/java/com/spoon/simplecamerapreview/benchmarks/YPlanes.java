@@ -0,0 +1,37 @@
+package com.spoon.simplecamerapreview.benchmarks;
+
+import java.util.Random;
+
+/**
+ * Synthetic Y planes in the sizes ImageAnalysis delivers. The content does not change the work the kernels do, only
+ * the values they report, so a textured gradient stands in for camera frames.
+ */
+final class YPlanes {
+
+    private YPlanes() {
+    }
+
+    /**
+     * A width x height plane with rowStride bytes per row, the padding left at zero as in a camera buffer.
+     */
+    static byte[] textured(int width, int height, int rowStride, long seed) {
+        Random random = new Random(seed);
+        byte[] plane = new byte[rowStride * height];
+        for (int row = 0; row < height; row++) {
+            for (int column = 0; column < width; column++) {
+                int gradient = (column * 255 / width + row * 255 / height) / 2;
+                int edge = ((column / 16 + row / 16) % 2) * 40;
+                int noise = random.nextInt(17) - 8;
+                plane[row * rowStride + column] = (byte) Math.max(0, Math.min(255, gradient + edge + noise));
+            }
+        }
+        return plane;
+    }
+
+    /**
+     * The height of a 4:3 frame of the given width.
+     */
+    static int heightFor(int width) {
+        return width * 3 / 4;
+    }
+}
@@ -0,0 +1,211 @@
+package com.spoon.simplecamerapreview;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.drew.imaging.jpeg.JpegMetadataReader;
+import com.drew.lang.GeoLocation;
+import com.drew.metadata.Metadata;
+import com.drew.metadata.exif.ExifIFD0Directory;
+import com.drew.metadata.exif.ExifSubIFDDirectory;
+import com.drew.metadata.exif.ExifThumbnailDirectory;
+import com.drew.metadata.exif.GpsDirectory;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import javax.imageio.ImageIO;
+import org.junit.Test;
+
+/**
+ * Splices the fixture JPEGs of src/test/resources/exif and compares the result with the expected files byte for
+ * byte. The expected files were written by ExifSplicer and checked with metadata-extractor, which every test also
+ * runs on the output. Run with -DupdateExifFixtures=true to rewrite them after an intended change of the output.
+ * <p>
+ * The inputs are 16x12 JPEGs laid out like camera output: IFD0 with values stored outside it, an Exif IFD, an
+ * optional GPS IFD and an IFD1 thumbnail, in Intel (II) and Motorola (MM) byte order. jfif.jpg has no Exif segment
+ * and intel-overflow.jpg fills its APP1 segment up to 38 bytes short of the 64 KB limit with a maker note.
+ */
+public class ExifSplicerTest {
+
+    private static final String FIXTURES = "src/test/resources/exif/";
+    // 2026-10-18 09:30:00 UTC
+    private static final long GPS_TIME_MILLIS = 1792315800000L;
+    private static final ExifSplicer.GpsInfo EIFFEL_TOWER = new ExifSplicer.GpsInfo(48.858370, 2.294481, 35.5, 1.5, GPS_TIME_MILLIS);
+    private static final ExifSplicer.GpsInfo NO_ALTITUDE_OR_SPEED = new ExifSplicer.GpsInfo(-33.8568, 151.2153, Double.NaN, Double.NaN, GPS_TIME_MILLIS);
+
+    @Test
+    public void motorolaWithoutGpsIfd() throws Exception {
+        Metadata metadata = assertSplice("motorola.jpg", 6, EIFFEL_TOWER, "motorola.spliced.jpg");
+        assertOrientation(6, metadata);
+        assertCameraTagsKept(metadata);
+        assertLocation(48.858370, 2.294481, metadata);
+        assertEquals("35.5 metres", metadata.getFirstDirectoryOfType(GpsDirectory.class).getDescription(GpsDirectory.TAG_ALTITUDE));
+    }
+
+    @Test
+    public void intelWithoutGpsIfd() throws Exception {
+        Metadata metadata = assertSplice("intel.jpg", 6, EIFFEL_TOWER, "intel.spliced.jpg");
+        assertOrientation(6, metadata);
+        assertCameraTagsKept(metadata);
+        assertLocation(48.858370, 2.294481, metadata);
+    }
+
+    @Test
+    public void motorolaReplacesTheGpsIfd() throws Exception {
+        Metadata metadata = assertSplice("motorola-gps.jpg", 8, NO_ALTITUDE_OR_SPEED, "motorola-gps.spliced.jpg");
+        assertOrientation(8, metadata);
+        assertCameraTagsKept(metadata);
+        assertLocation(-33.8568, 151.2153, metadata);
+        assertTrue(!metadata.getFirstDirectoryOfType(GpsDirectory.class).containsTag(GpsDirectory.TAG_ALTITUDE));
+    }
+
+    @Test
+    public void intelReplacesTheGpsIfd() throws Exception {
+        Metadata metadata = assertSplice("intel-gps.jpg", 8, EIFFEL_TOWER, "intel-gps.spliced.jpg");
+        assertOrientation(8, metadata);
+        assertCameraTagsKept(metadata);
+        assertLocation(48.858370, 2.294481, metadata);
+    }
+
+    @Test
+    public void keepsTheExistingGpsIfdWithoutLocation() throws Exception {
+        Metadata metadata = assertSplice("intel-gps.jpg", 3, null, "intel-gps.orientation.jpg");
+        assertOrientation(3, metadata);
+        assertCameraTagsKept(metadata);
+        assertLocation(-(33 + 51 / 60.0 + 54 / 3600.0), -(151 + 12 / 60.0 + 36 / 3600.0), metadata);
+    }
+
+    @Test
+    public void keepsTheExistingOrientationWhenUndefined() throws Exception {
+        Metadata metadata = assertSplice("motorola.jpg", ExifSplicer.ORIENTATION_UNDEFINED, EIFFEL_TOWER, "motorola.location.jpg");
+        assertOrientation(1, metadata);
+        assertLocation(48.858370, 2.294481, metadata);
+    }
+
+    @Test
+    public void insertsExifAfterJfif() throws Exception {
+        Metadata metadata = assertSplice("jfif.jpg", 6, EIFFEL_TOWER, "jfif.spliced.jpg");
+        assertOrientation(6, metadata);
+        assertLocation(48.858370, 2.294481, metadata);
+        byte[] output = readFixture("jfif.spliced.jpg");
+        assertEquals(0xE0, output[3] & 0xFF);
+        assertEquals(0xE1, output[2 + 2 + 16 + 1] & 0xFF);
+    }
+
+    @Test
+    public void rejectsASegmentLargerThanApp1AllowsWithoutWriting() throws Exception {
+        byte[] input = readFixture("intel-overflow.jpg");
+        for (ExifSplicer.GpsInfo gps : new ExifSplicer.GpsInfo[]{EIFFEL_TOWER, null}) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                ExifSplicer.splice(ByteBuffer.wrap(input), 6, gps, out);
+                fail("Expected the Exif segment to overflow");
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith("Exif segment too large"));
+            }
+            assertEquals(0, out.size());
+        }
+    }
+
+    @Test
+    public void rejectsAnythingButAJpeg() {
+        try {
+            ExifSplicer.splice(ByteBuffer.wrap(new byte[]{(byte) 0x89, 'P', 'N', 'G'}), 6, null, new ByteArrayOutputStream());
+            fail("Expected a PNG to be rejected");
+        } catch (IOException e) {
+            assertEquals("Not a JPEG image", e.getMessage());
+        }
+    }
+
+    @Test
+    public void directAndOffsetBuffersGiveTheSameBytes() throws Exception {
+        byte[] input = readFixture("intel-gps.jpg");
+        byte[] expected = readFixture("intel-gps.spliced.jpg");
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(input.length);
+        direct.put(input).flip();
+        assertArrayEquals(expected, splice(direct, 8, EIFFEL_TOWER));
+
+        byte[] padded = new byte[input.length + 16];
+        System.arraycopy(input, 0, padded, 8, input.length);
+        ByteBuffer window = ByteBuffer.wrap(padded, 8, input.length);
+        assertArrayEquals(expected, splice(window, 8, EIFFEL_TOWER));
+        assertEquals(8, window.position());
+    }
+
+    @Test
+    public void orientationFromRotation() {
+        assertEquals(1, ExifSplicer.orientationFromRotation(0));
+        assertEquals(6, ExifSplicer.orientationFromRotation(90));
+        assertEquals(3, ExifSplicer.orientationFromRotation(180));
+        assertEquals(8, ExifSplicer.orientationFromRotation(270));
+        assertEquals(8, ExifSplicer.orientationFromRotation(-90));
+        assertEquals(6, ExifSplicer.orientationFromRotation(450));
+    }
+
+    private static Metadata assertSplice(String input, int orientation, ExifSplicer.GpsInfo gps, String expected) throws Exception {
+        byte[] output = splice(ByteBuffer.wrap(readFixture(input)), orientation, gps);
+        if (Boolean.getBoolean("updateExifFixtures")) {
+            Files.write(Paths.get(FIXTURES + expected), output);
+        }
+        assertArrayEquals(expected, readFixture(expected), output);
+
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(output));
+        assertNotNull("The spliced JPEG does not decode", image);
+        assertEquals(16, image.getWidth());
+        assertEquals(12, image.getHeight());
+        return JpegMetadataReader.readMetadata(new ByteArrayInputStream(output));
+    }
+
+    private static byte[] splice(ByteBuffer input, int orientation, ExifSplicer.GpsInfo gps) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExifSplicer.splice(input, orientation, gps, out);
+        return out.toByteArray();
+    }
+
+    private static void assertOrientation(int orientation, Metadata metadata) throws Exception {
+        ExifIFD0Directory ifd0 = metadata.getFirstDirectoryOfType(ExifIFD0Directory.class);
+        assertNotNull(ifd0);
+        assertEquals(orientation, ifd0.getInt(ExifIFD0Directory.TAG_ORIENTATION));
+    }
+
+    /**
+     * The tags of the fixture camera, including those stored outside IFD0 and the thumbnail of IFD1, still read
+     * back through the offsets of the original TIFF data.
+     */
+    private static void assertCameraTagsKept(Metadata metadata) throws Exception {
+        ExifIFD0Directory ifd0 = metadata.getFirstDirectoryOfType(ExifIFD0Directory.class);
+        assertEquals("Google", ifd0.getString(ExifIFD0Directory.TAG_MAKE));
+        assertEquals("Pixel 6", ifd0.getString(ExifIFD0Directory.TAG_MODEL));
+        assertEquals("HDR+ 1.0.540104767zd", ifd0.getString(ExifIFD0Directory.TAG_SOFTWARE));
+
+        ExifSubIFDDirectory exif = metadata.getFirstDirectoryOfType(ExifSubIFDDirectory.class);
+        assertNotNull(exif);
+        assertEquals("2026:10:18 09:30:00", exif.getString(ExifSubIFDDirectory.TAG_DATETIME_ORIGINAL));
+        assertEquals("1/120 sec", exif.getDescription(ExifSubIFDDirectory.TAG_EXPOSURE_TIME));
+
+        ExifThumbnailDirectory thumbnail = metadata.getFirstDirectoryOfType(ExifThumbnailDirectory.class);
+        assertNotNull(thumbnail);
+        assertEquals(readFixture("jfif.jpg").length, thumbnail.getInt(ExifThumbnailDirectory.TAG_THUMBNAIL_LENGTH));
+    }
+
+    private static void assertLocation(double latitude, double longitude, Metadata metadata) {
+        GpsDirectory gps = metadata.getFirstDirectoryOfType(GpsDirectory.class);
+        assertNotNull(gps);
+        GeoLocation location = gps.getGeoLocation();
+        assertNotNull(location);
+        assertEquals(latitude, location.getLatitude(), 1e-6);
+        assertEquals(longitude, location.getLongitude(), 1e-6);
+    }
+
+    private static byte[] readFixture(String name) throws IOException {
+        return Files.readAllBytes(Paths.get(FIXTURES + name));
+    }
+}
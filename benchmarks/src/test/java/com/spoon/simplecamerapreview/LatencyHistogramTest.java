@@ -0,0 +1,165 @@
+package com.spoon.simplecamerapreview;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void valuesBelowEightHaveTheirOwnBucket() {
+        for (int value = 0; value < 8; value++) {
+            assertEquals(value, LatencyHistogram.bucketIndex(value));
+            assertEquals(value, LatencyHistogram.bucketLowerBound(value));
+        }
+        assertEquals(7, LatencyHistogram.bucketIndex(7));
+        assertEquals(8, LatencyHistogram.bucketIndex(8));
+        assertEquals(8, LatencyHistogram.bucketLowerBound(8));
+    }
+
+    @Test
+    public void everyPowerOfTwoStartsABucket() {
+        for (int exponent = 3; exponent <= 40; exponent++) {
+            long value = 1L << exponent;
+            int index = LatencyHistogram.bucketIndex(value);
+            assertEquals("2^" + exponent, value, LatencyHistogram.bucketLowerBound(index));
+            assertEquals("2^" + exponent + " - 1", index - 1, LatencyHistogram.bucketIndex(value - 1));
+        }
+    }
+
+    @Test
+    public void bucketsAreContiguousAndWithinAnEighthOfTheirValues() {
+        for (int index = 0; index < LatencyHistogram.BUCKET_COUNT; index++) {
+            long lower = LatencyHistogram.bucketLowerBound(index);
+            long upper = LatencyHistogram.bucketLowerBound(index + 1) - 1;
+            assertTrue("bucket " + index, upper >= lower);
+            assertEquals("lower bound of bucket " + index, index, LatencyHistogram.bucketIndex(lower));
+            assertEquals("upper bound of bucket " + index, index, LatencyHistogram.bucketIndex(upper));
+            if (lower >= 8) {
+                assertTrue("width of bucket " + index, (upper - lower + 1) * 8 <= lower);
+            }
+        }
+        assertEquals(LatencyHistogram.MAX_VALUE, LatencyHistogram.bucketLowerBound(LatencyHistogram.BUCKET_COUNT) - 1);
+    }
+
+    @Test
+    public void valuesAboveMaxValueAreClamped() {
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketIndex(LatencyHistogram.MAX_VALUE));
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(Long.MAX_VALUE);
+        histogram.record(LatencyHistogram.MAX_VALUE + 1);
+        assertEquals(2, histogram.getCount());
+        assertEquals(LatencyHistogram.MAX_VALUE, histogram.getMax());
+        assertEquals(LatencyHistogram.MAX_VALUE, histogram.getMean(), 0);
+        assertEquals(LatencyHistogram.MAX_VALUE, histogram.getPercentile(1), LatencyHistogram.MAX_VALUE / 8.0);
+    }
+
+    @Test
+    public void negativeValuesAreIgnored() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-1);
+        histogram.record(Long.MIN_VALUE);
+        assertEquals(0, histogram.getCount());
+    }
+
+    @Test
+    public void emptyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getMean(), 0);
+        assertEquals(0, histogram.getPercentile(0), 0);
+        assertEquals(0, histogram.getPercentile(0.5), 0);
+        assertEquals(0, histogram.getPercentile(1), 0);
+    }
+
+    @Test
+    public void singleExactSample() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(5);
+        assertEquals(5, histogram.getPercentile(0), 0);
+        assertEquals(5, histogram.getPercentile(0.5), 0);
+        assertEquals(5, histogram.getPercentile(1), 0);
+        assertEquals(5, histogram.getMean(), 0);
+    }
+
+    @Test
+    public void singleSampleReportsTheMidpointOfItsBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(100);
+        // 100 falls in [96, 103]
+        assertEquals(99.5, histogram.getPercentile(0), 0);
+        assertEquals(99.5, histogram.getPercentile(0.99), 0);
+        assertEquals(100, histogram.getMax());
+    }
+
+    @Test
+    public void percentilesAreCappedAtTheMaximum() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(96);
+        assertEquals(96, histogram.getPercentile(0.5), 0);
+    }
+
+    @Test
+    public void fractionsOutsideZeroToOneAreClamped() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(2);
+        histogram.record(6);
+        assertEquals(2, histogram.getPercentile(-1), 0);
+        assertEquals(6, histogram.getPercentile(2), 0);
+    }
+
+    @Test
+    public void percentilesStayWithinAnEighthOfTheRecordedValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 1; value <= 1000; value++) {
+            histogram.record(value);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500.5, histogram.getMean(), 0);
+        assertEquals(500, histogram.getPercentile(0.5), 500 / 8.0);
+        assertEquals(900, histogram.getPercentile(0.9), 900 / 8.0);
+        assertEquals(990, histogram.getPercentile(0.99), 990 / 8.0);
+        // The midpoint of [960, 1023]
+        assertEquals(991.5, histogram.getPercentile(1), 0);
+    }
+
+    @Test
+    public void resetForgetsEverything() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(42);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(0.5), 0);
+    }
+
+    @Test
+    public void concurrentRecordsAreAllCounted() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        int threads = 4;
+        int recordsPerThread = 100_000;
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final long offset = t;
+            Thread worker = new Thread(() -> {
+                for (int i = 0; i < recordsPerThread; i++) {
+                    histogram.record(i % 1000 + offset);
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        assertEquals(threads * recordsPerThread, histogram.getCount());
+        assertEquals(999 + threads - 1, histogram.getMax());
+        assertEquals((999 / 2.0) + (threads - 1) / 2.0, histogram.getMean(), 1e-9);
+    }
+}
@@ -0,0 +1,136 @@
+package com.spoon.simplecamerapreview;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import com.spoon.simplecamerapreview.benchmarks.SizeTables;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+public class ResolutionPolicyTest {
+
+    private static final double RATIO_3_BY_4 = 3.0 / 4.0;
+    private static final double RATIO_9_BY_16 = 9.0 / 16.0;
+    private static final double RATIO_3_BY_5 = 3.0 / 5.0;
+
+    private final List<ResolutionPolicy.Candidate> pixel6 = SizeTables.load(SizeTables.PIXEL_6_BACK);
+    private final ResolutionPolicy maxQuality = ResolutionPolicy.fromName(ResolutionPolicy.MAX_QUALITY);
+
+    @Test
+    public void maxQualityPicksTheWidestMatchingSize() {
+        assertSize(4080, 3072, maxQuality.select(pixel6, RATIO_3_BY_4, 0));
+        assertSize(4032, 2268, maxQuality.select(pixel6, RATIO_9_BY_16, 0));
+    }
+
+    @Test
+    public void maxQualityPicksTheMatchingSizeClosestToTheTargetWidth() {
+        assertSize(1920, 1440, maxQuality.select(pixel6, RATIO_3_BY_4, 1920));
+        assertSize(1920, 1080, maxQuality.select(pixel6, RATIO_9_BY_16, 1920));
+        assertSize(1024, 768, maxQuality.select(pixel6, RATIO_3_BY_4, 1000));
+        assertSize(1280, 720, maxQuality.select(pixel6, RATIO_9_BY_16, 1100));
+    }
+
+    @Test
+    public void maxQualityConsidersEverySizeWhenNoneMatchesTheRatio() {
+        assertSize(4080, 3072, maxQuality.select(pixel6, RATIO_3_BY_5, 0));
+        assertSize(720, 480, maxQuality.select(pixel6, RATIO_3_BY_5, 700));
+    }
+
+    @Test
+    public void maxQualityKeepsTheFirstListedSizeOnTies() {
+        assertSize(1920, 1440, maxQuality.select(pixel6, RATIO_3_BY_5, 1920));
+    }
+
+    @Test
+    public void maxQualityPrefersWidthOverAnExactRatio() {
+        ResolutionPolicy.Candidate exact = candidate(4000, 3000, 0);
+        ResolutionPolicy.Candidate wider = candidate(4032, 3016, 0);
+        assertSame(wider, maxQuality.select(Arrays.asList(exact, wider), RATIO_3_BY_4, 0));
+    }
+
+    @Test
+    public void maxQualityIgnoresStallDurations() {
+        ResolutionPolicy.Candidate slow = candidate(4000, 3000, 200_000_000L);
+        ResolutionPolicy.Candidate fast = candidate(4000, 3000, 0);
+        assertSame(slow, maxQuality.select(Arrays.asList(slow, fast), RATIO_3_BY_4, 0));
+    }
+
+    @Test
+    public void maxQualityMatchesTheSelectionBeforePolicies() {
+        double[] ratios = {RATIO_3_BY_4, RATIO_9_BY_16, RATIO_3_BY_5, 2.0 / 3.0, 1.0, 0.7529, 0.74};
+        List<ResolutionPolicy.Candidate> reversed = new ArrayList<>(pixel6);
+        Collections.reverse(reversed);
+        for (List<ResolutionPolicy.Candidate> table : Arrays.asList(pixel6, reversed)) {
+            for (double ratio : ratios) {
+                for (int targetWidth = -1; targetWidth <= 4500; targetWidth += 7) {
+                    assertSame("ratio " + ratio + ", target " + targetWidth,
+                            baselineSelect(table, ratio, targetWidth), maxQuality.select(table, ratio, targetWidth));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void latencyPoliciesAvoidStallingSizes() {
+        assertSize(3264, 2448, ResolutionPolicy.fromName(ResolutionPolicy.FASTEST).select(pixel6, RATIO_3_BY_4, 0));
+        assertSize(1920, 1080, ResolutionPolicy.fromName(ResolutionPolicy.FASTEST).select(pixel6, RATIO_9_BY_16, 0));
+    }
+
+    @Test
+    public void unknownNamesUseMaxQuality() {
+        assertEquals(ResolutionPolicy.MAX_QUALITY, ResolutionPolicy.fromName("unknown").getName());
+        assertEquals(ResolutionPolicy.MAX_QUALITY, ResolutionPolicy.fromName(null).getName());
+    }
+
+    @Test
+    public void nothingToSelectFrom() {
+        assertNull(maxQuality.select(null, RATIO_3_BY_4, 0));
+        assertNull(maxQuality.select(Collections.<ResolutionPolicy.Candidate>emptyList(), RATIO_3_BY_4, 0));
+    }
+
+    /**
+     * The selection calculateResolution made before resolution policies existed.
+     */
+    private static ResolutionPolicy.Candidate baselineSelect(List<ResolutionPolicy.Candidate> sizes, double aspectRatio, int desiredWidthPx) {
+        List<ResolutionPolicy.Candidate> matching = new ArrayList<>();
+        for (ResolutionPolicy.Candidate size : sizes) {
+            if (Math.abs((double) size.getHeight() / size.getWidth() - aspectRatio) < 0.01) {
+                matching.add(size);
+            }
+        }
+        if (matching.isEmpty()) {
+            matching = sizes;
+        }
+
+        ResolutionPolicy.Candidate best = matching.get(0);
+        if (desiredWidthPx <= 0) {
+            for (ResolutionPolicy.Candidate size : matching) {
+                if (size.getWidth() > best.getWidth()) {
+                    best = size;
+                }
+            }
+            return best;
+        }
+        int smallestDifference = Math.abs(best.getWidth() - desiredWidthPx);
+        for (ResolutionPolicy.Candidate size : matching) {
+            int difference = Math.abs(size.getWidth() - desiredWidthPx);
+            if (difference < smallestDifference) {
+                smallestDifference = difference;
+                best = size;
+            }
+        }
+        return best;
+    }
+
+    private static ResolutionPolicy.Candidate candidate(int width, int height, long stallDurationNs) {
+        return new ResolutionPolicy.Candidate(width, height, stallDurationNs, 33_333_333L);
+    }
+
+    private static void assertSize(int width, int height, ResolutionPolicy.Candidate candidate) {
+        assertEquals(width + "x" + height, candidate.getWidth() + "x" + candidate.getHeight());
+    }
+}
@@ -36,6 +36,10 @@ export class CameraComponent  implements OnInit {
         if (captureButton) {
           captureButton.addEventListener('click', () => this.capturePicture());
         }
+      const benchmarkButton = document.getElementById('benchmarkCapture');
+        if (benchmarkButton) {
+          benchmarkButton.addEventListener('click', () => this.benchmarkCaptureOutput());
+        }
       }
 
     enableCamera(params:any){
@@ -68,6 +72,47 @@ export class CameraComponent  implements OnInit {
       }
     }
 
+    // Compares the time from capture() until the JPEG bytes are available in JS when they are read back from
+    // the saved file and when they are returned directly with output: 'bytes'.
+    async benchmarkCaptureOutput(runs: number = 5) {
+      if (typeof SimpleCameraPreview === 'undefined') {
+        console.warn('SimpleCameraPreview plugin not available.');
+        return;
+      }
+
+      const fileTimes: number[] = [];
+      const bytesTimes: number[] = [];
+      for (let i = 0; i < runs; i++) {
+        fileTimes.push(await this.timeToBytes({}));
+        bytesTimes.push(await this.timeToBytes({ output: 'bytes' }));
+      }
+
+      const mean = (times: number[]) => Math.round(times.reduce((sum, time) => sum + time, 0) / times.length);
+      const message = `Time to bytes in JS: file ${mean(fileTimes)} ms, bytes ${mean(bytesTimes)} ms`;
+      console.log(message, { fileTimes, bytesTimes });
+      this.toastMessage = message;
+      this.showToast('top');
+    }
+
+    timeToBytes(options: any): Promise<number> {
+      const startedAt = performance.now();
+      return new Promise((resolve, reject) => {
+        SimpleCameraPreview.capture(options, async (result: ArrayBuffer | string) => {
+          try {
+            let bytes = result;
+            if (typeof result === 'string') {
+              const response = await fetch((window as any).Ionic.WebView.convertFileSrc(result));
+              bytes = await response.arrayBuffer();
+            }
+            console.log('Received', (bytes as ArrayBuffer).byteLength, 'bytes');
+            resolve(performance.now() - startedAt);
+          } catch (err) {
+            reject(err);
+          }
+        }, reject);
+      });
+    }
+
     displayToastMesssage(imagePath: string){
       const message = `Picture taken at: ${imagePath}`;
       this.toastMessageEmitter.emit(message); 
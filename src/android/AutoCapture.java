@@ -0,0 +1,81 @@
+package com.spoon.simplecamerapreview;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+interface AutoCaptureCallback {
+    void onTriggered(AutoCapture autoCapture);
+}
+
+/**
+ * Scores every analysis frame with SharpnessScorer and triggers once stableFrames consecutive frames are at least
+ * threshold sharp while moving no more than maxMotion. Triggering and cancelling are exclusive, whichever comes
+ * first wins.
+ */
+public class AutoCapture implements FrameConsumer {
+
+    private static final int DOWNSAMPLE_FACTOR = 4;
+
+    private final double threshold;
+    private final double maxMotion;
+    private final int stableFrames;
+    private final AutoCaptureCallback callback;
+    private final SharpnessScorer scorer = new SharpnessScorer(DOWNSAMPLE_FACTOR);
+    private final AtomicBoolean finished = new AtomicBoolean(false);
+    private int consecutiveFrames = 0;
+    private volatile int framesScored = 0;
+    private volatile double bestSharpness = 0;
+    private volatile double sharpness = 0;
+    private volatile double motion = 0;
+
+    public AutoCapture(double threshold, double maxMotion, int stableFrames, AutoCaptureCallback callback) {
+        this.threshold = threshold;
+        this.maxMotion = maxMotion;
+        this.stableFrames = stableFrames;
+        this.callback = callback;
+    }
+
+    @Override
+    public boolean wantsFrame(long nowMs) {
+        return !finished.get();
+    }
+
+    @Override
+    public void onFrame(FrameAnalyzer.Frame frame) {
+        sharpness = scorer.score(frame.getY(), frame.getWidth(), frame.getHeight(), frame.getWidth());
+        motion = scorer.getMotion();
+        bestSharpness = Math.max(bestSharpness, sharpness);
+        framesScored++;
+
+        if (sharpness >= threshold && motion <= maxMotion) {
+            consecutiveFrames++;
+        } else {
+            consecutiveFrames = 0;
+        }
+        if (consecutiveFrames >= stableFrames && finished.compareAndSet(false, true)) {
+            callback.onTriggered(this);
+        }
+    }
+
+    /**
+     * Returns false when the capture was already triggered or cancelled.
+     */
+    public boolean cancel() {
+        return finished.compareAndSet(false, true);
+    }
+
+    public int getFramesScored() {
+        return framesScored;
+    }
+
+    public double getBestSharpness() {
+        return bestSharpness;
+    }
+
+    public double getSharpness() {
+        return sharpness;
+    }
+
+    public double getMotion() {
+        return motion;
+    }
+}
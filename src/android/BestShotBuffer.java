@@ -0,0 +1,164 @@
+package com.spoon.simplecamerapreview;
+
+import java.util.Arrays;
+
+/**
+ * Fixed capacity ring of the most recent analysis frames with their sharpness and motion scores. Each slot owns a
+ * pixel buffer sized from the analysis resolution, reallocated only when that resolution changes, so recording a
+ * frame never allocates. Not thread safe, it is only used on the analysis thread.
+ * This class has no Android dependencies so it can be exercised on the JVM.
+ */
+public final class BestShotBuffer {
+
+    private final int capacity;
+    private final double[] sharpness;
+    private final double[] motion;
+    private final long[] timestampNs;
+    private final long[] receivedAtMs;
+    private final int[] rotationDegrees;
+    private final double[] scratch;
+    private byte[][] pixels = new byte[0][];
+    private int width;
+    private int height;
+    private int next = 0;
+    private int size = 0;
+
+    public BestShotBuffer(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        sharpness = new double[this.capacity];
+        motion = new double[this.capacity];
+        timestampNs = new long[this.capacity];
+        receivedAtMs = new long[this.capacity];
+        rotationDegrees = new int[this.capacity];
+        scratch = new double[this.capacity];
+    }
+
+    /**
+     * Returns the slot the next frame is written to, overwriting the oldest one. A new frame size empties the
+     * buffer and reallocates the pixel buffers with frameBytes each.
+     */
+    public int beginFrame(int width, int height, int frameBytes) {
+        if (pixels.length == 0 || pixels[0].length != frameBytes || width != this.width || height != this.height) {
+            pixels = new byte[capacity][frameBytes];
+            this.width = width;
+            this.height = height;
+            next = 0;
+            size = 0;
+        }
+        return next;
+    }
+
+    public void commitFrame(int slot, double sharpness, double motion, long timestampNs, long receivedAtMs, int rotationDegrees) {
+        this.sharpness[slot] = sharpness;
+        this.motion[slot] = motion;
+        this.timestampNs[slot] = timestampNs;
+        this.receivedAtMs[slot] = receivedAtMs;
+        this.rotationDegrees[slot] = rotationDegrees;
+        next = (slot + 1) % capacity;
+        size = Math.min(size + 1, capacity);
+    }
+
+    public void clear() {
+        next = 0;
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Slot of the index-th frame held, 0 being the oldest.
+     */
+    public int slotAt(int index) {
+        return (next - size + index + capacity) % capacity;
+    }
+
+    public int latestSlot() {
+        return size > 0 ? slotAt(size - 1) : -1;
+    }
+
+    /**
+     * Sharpest frame held, the most recent one on ties, or -1 when the buffer is empty.
+     */
+    public int sharpestSlot() {
+        int best = -1;
+        for (int i = 0; i < size; i++) {
+            int slot = slotAt(i);
+            if (best < 0 || sharpness[slot] >= sharpness[best]) {
+                best = slot;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Sharpness below which the given fraction (0 to 1) of the frames held fall, 0 when the buffer is empty.
+     */
+    public double sharpnessPercentile(double fraction) {
+        return percentile(sharpness, fraction);
+    }
+
+    /**
+     * Motion below which the given fraction (0 to 1) of the frames held fall, 0 when the buffer is empty.
+     */
+    public double motionPercentile(double fraction) {
+        return percentile(motion, fraction);
+    }
+
+    private double percentile(double[] values, double fraction) {
+        if (size == 0) {
+            return 0;
+        }
+        for (int i = 0; i < size; i++) {
+            scratch[i] = values[slotAt(i)];
+        }
+        Arrays.sort(scratch, 0, size);
+        int index = (int) Math.round(Math.max(0, Math.min(1, fraction)) * (size - 1));
+        return scratch[index];
+    }
+
+    public double sharpnessMean() {
+        double sum = 0;
+        for (int i = 0; i < size; i++) {
+            sum += sharpness[slotAt(i)];
+        }
+        return size > 0 ? sum / size : 0;
+    }
+
+    public byte[] getPixels(int slot) {
+        return pixels[slot];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public double getSharpness(int slot) {
+        return sharpness[slot];
+    }
+
+    public double getMotion(int slot) {
+        return motion[slot];
+    }
+
+    public long getTimestampNs(int slot) {
+        return timestampNs[slot];
+    }
+
+    public long getReceivedAtMs(int slot) {
+        return receivedAtMs[slot];
+    }
+
+    public int getRotationDegrees(int slot) {
+        return rotationDegrees[slot];
+    }
+}
@@ -0,0 +1,228 @@
+package com.spoon.simplecamerapreview;
+
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.YuvImage;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import androidx.camera.core.ImageProxy;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+interface BestShotCallback {
+    /**
+     * nativePath is only set when the winning analysis frame itself was written as the picture.
+     */
+    void onSelected(Exception err, String nativePath, JSONObject report);
+}
+
+/**
+ * Keeps the most recent analysis frames as NV21 in a BestShotBuffer together with their sharpness and motion
+ * scores. A capture can either take the sharpest buffered frame as the picture, or wait up to a short window for a
+ * frame among the sharpest and stillest of the buffered ones to fire ImageCapture at that moment.
+ * Buffer and selection state are only touched on the analysis thread.
+ */
+public class BestShotSelector implements FrameConsumer {
+
+    public static final String MODE_SHARPEST = "sharpest";
+    public static final String MODE_STABLE = "stable";
+    private static final int DOWNSAMPLE_FACTOR = 4;
+    private static final int JPEG_QUALITY = 95;
+    private static final double STABLE_SHARPNESS_PERCENTILE = 0.75;
+    private static final double STABLE_MOTION_PERCENTILE = 0.25;
+    private static final int MIN_STABLE_FRAMES = 4;
+
+    private final BestShotBuffer buffer;
+    private final SharpnessScorer scorer = new SharpnessScorer(DOWNSAMPLE_FACTOR);
+    private final Handler deadlineHandler = new Handler(Looper.getMainLooper());
+    private BestShotCallback stableCallback;
+    private long stableRequestedAtMs;
+    private double stableSharpness;
+    private double stableMotion;
+    private boolean stableThresholdsSet;
+
+    public BestShotSelector(int frames) {
+        buffer = new BestShotBuffer(frames);
+    }
+
+    @Override
+    public boolean wantsFrame(long nowMs) {
+        return true;
+    }
+
+    @Override
+    public void onFrame(FrameAnalyzer.Frame frame) {
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        int lumaBytes = width * height;
+        int slot = buffer.beginFrame(width, height, lumaBytes + 2 * (width / 2) * (height / 2));
+        byte[] pixels = buffer.getPixels(slot);
+        System.arraycopy(frame.getY(), 0, pixels, 0, lumaBytes);
+        copyChroma(frame.getImage(), pixels, lumaBytes, width / 2, height / 2);
+
+        double sharpness = scorer.score(frame.getY(), width, height, width);
+        double motion = scorer.getMotion();
+        buffer.commitFrame(slot, sharpness, motion, frame.getTimestampNs(), frame.getReceivedAtMs(), frame.getRotationDegrees());
+
+        if (stableCallback == null) {
+            return;
+        }
+        if (!stableThresholdsSet) {
+            if (buffer.size() < Math.min(MIN_STABLE_FRAMES, buffer.getCapacity())) {
+                return;
+            }
+            setStableThresholds();
+        }
+        if (sharpness >= stableSharpness && motion <= stableMotion) {
+            completeStable("stable", slot);
+        }
+    }
+
+    /**
+     * Writes the sharpest buffered frame to imgFile.
+     */
+    public void selectSharpest(File imgFile, BestShotCallback callback) {
+        FrameAnalyzer.getExecutor().execute(() -> {
+            int slot = buffer.sharpestSlot();
+            if (slot < 0) {
+                callback.onSelected(new Exception("No analysis frame buffered yet"), null, null);
+                return;
+            }
+            try {
+                writeJpeg(slot, imgFile);
+            } catch (IOException e) {
+                e.printStackTrace();
+                callback.onSelected(new Exception("Unable to write best shot: " + e.getMessage()), null, null);
+                return;
+            }
+            callback.onSelected(null, Uri.fromFile(imgFile).toString(), getReport(MODE_SHARPEST, "sharpest", slot));
+        });
+    }
+
+    /**
+     * Calls back on the analysis thread as soon as a frame is sharper and stiller than three quarters of the
+     * buffered frames, or with the latest frame once windowMs elapsed. Frames only trigger once a few are buffered
+     * to compare them with, and the callback gets an error when none is buffered at the deadline. A new request
+     * replaces a pending one, which is then called back right away.
+     */
+    public void awaitStable(long windowMs, BestShotCallback callback) {
+        FrameAnalyzer.getExecutor().execute(() -> {
+            if (stableCallback != null) {
+                completeStable("superseded", buffer.latestSlot());
+            }
+            stableCallback = callback;
+            stableRequestedAtMs = SystemClock.elapsedRealtime();
+            stableThresholdsSet = false;
+            if (buffer.size() >= Math.min(MIN_STABLE_FRAMES, buffer.getCapacity())) {
+                setStableThresholds();
+            }
+            deadlineHandler.postDelayed(() -> FrameAnalyzer.getExecutor().execute(() -> {
+                if (stableCallback == callback) {
+                    completeStable("deadline", buffer.latestSlot());
+                }
+            }), windowMs);
+        });
+    }
+
+    private void setStableThresholds() {
+        stableSharpness = buffer.sharpnessPercentile(STABLE_SHARPNESS_PERCENTILE);
+        stableMotion = buffer.motionPercentile(STABLE_MOTION_PERCENTILE);
+        stableThresholdsSet = true;
+    }
+
+    private void completeStable(String trigger, int slot) {
+        BestShotCallback callback = stableCallback;
+        stableCallback = null;
+        if (slot < 0) {
+            callback.onSelected(new Exception("No analysis frame buffered yet"), null, null);
+            return;
+        }
+        JSONObject report = getReport(MODE_STABLE, trigger, slot);
+        try {
+            report.put("waitedMs", SystemClock.elapsedRealtime() - stableRequestedAtMs);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        callback.onSelected(null, null, report);
+    }
+
+    /**
+     * Describes the winning frame and the sharpness of every buffered frame from the oldest to the most recent.
+     */
+    private JSONObject getReport(String mode, String trigger, int slot) {
+        JSONObject report = new JSONObject();
+        try {
+            JSONObject winner = new JSONObject();
+            winner.put("sharpness", buffer.getSharpness(slot));
+            winner.put("motion", buffer.getMotion(slot));
+            winner.put("ageMs", SystemClock.elapsedRealtime() - buffer.getReceivedAtMs(slot));
+            winner.put("timestampNs", buffer.getTimestampNs(slot));
+            winner.put("width", buffer.getWidth());
+            winner.put("height", buffer.getHeight());
+
+            JSONArray scores = new JSONArray();
+            for (int i = 0; i < buffer.size(); i++) {
+                scores.put(buffer.getSharpness(buffer.slotAt(i)));
+            }
+            JSONObject distribution = new JSONObject();
+            distribution.put("count", buffer.size());
+            distribution.put("min", buffer.sharpnessPercentile(0));
+            distribution.put("median", buffer.sharpnessPercentile(0.5));
+            distribution.put("max", buffer.sharpnessPercentile(1));
+            distribution.put("mean", buffer.sharpnessMean());
+            distribution.put("sharpness", scores);
+
+            report.put("mode", mode);
+            report.put("trigger", trigger);
+            report.put("frame", winner);
+            report.put("distribution", distribution);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        return report;
+    }
+
+    private void writeJpeg(int slot, File imgFile) throws IOException {
+        int width = buffer.getWidth();
+        int height = buffer.getHeight();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        YuvImage yuvImage = new YuvImage(buffer.getPixels(slot), ImageFormat.NV21, width, height, null);
+        if (!yuvImage.compressToJpeg(new Rect(0, 0, width, height), JPEG_QUALITY, compressed)) {
+            throw new IOException("NV21 compression failed");
+        }
+        int orientation = ExifSplicer.orientationFromRotation(buffer.getRotationDegrees(slot));
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(imgFile))) {
+            ExifSplicer.splice(ByteBuffer.wrap(compressed.toByteArray()), orientation, null, out);
+        }
+    }
+
+    /**
+     * Interleaves the V and U planes after the luma, as NV21 expects.
+     */
+    private static void copyChroma(ImageProxy image, byte[] nv21, int offset, int chromaWidth, int chromaHeight) {
+        ImageProxy.PlaneProxy[] planes = image.getPlanes();
+        ByteBuffer u = planes[1].getBuffer();
+        ByteBuffer v = planes[2].getBuffer();
+        int rowStride = planes[1].getRowStride();
+        int pixelStride = planes[1].getPixelStride();
+        int index = offset;
+        for (int row = 0; row < chromaHeight; row++) {
+            int rowOffset = row * rowStride;
+            for (int col = 0; col < chromaWidth; col++) {
+                int position = rowOffset + col * pixelStride;
+                nv21[index++] = v.get(position);
+                nv21[index++] = u.get(position);
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.spoon.simplecamerapreview;
+
+import android.graphics.Bitmap;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Small pool of mutable ARGB_8888 bitmaps shared by the post-capture work. A pooled bitmap is handed out for any
+ * size that fits in its allocation and reconfigured to it, so it can back a scaled copy or be passed as
+ * BitmapFactory.Options.inBitmap.
+ */
+public class BitmapPool {
+
+    private static final int MAX_POOLED_BITMAPS = 4;
+    private static final int BYTES_PER_PIXEL = 4;
+    private static final ArrayDeque<Bitmap> pool = new ArrayDeque<>();
+
+    private BitmapPool() {
+
+    }
+
+    public static synchronized Bitmap acquire(int width, int height) {
+        Bitmap smallestFit = null;
+        Iterator<Bitmap> iterator = pool.iterator();
+        while (iterator.hasNext()) {
+            Bitmap pooled = iterator.next();
+            if (pooled.getAllocationByteCount() >= width * height * BYTES_PER_PIXEL
+                    && (smallestFit == null || pooled.getAllocationByteCount() < smallestFit.getAllocationByteCount())) {
+                smallestFit = pooled;
+            }
+        }
+
+        if (smallestFit == null) {
+            return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        }
+        pool.remove(smallestFit);
+        smallestFit.reconfigure(width, height, Bitmap.Config.ARGB_8888);
+        return smallestFit;
+    }
+
+    /**
+     * Returns a bitmap obtained from acquire, or decoded into one, to the pool. The smallest pooled bitmap is
+     * recycled when the pool is full.
+     */
+    public static synchronized void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) {
+            return;
+        }
+        if (pool.size() == MAX_POOLED_BITMAPS) {
+            Bitmap smallest = bitmap;
+            for (Bitmap pooled : pool) {
+                if (pooled.getAllocationByteCount() < smallest.getAllocationByteCount()) {
+                    smallest = pooled;
+                }
+            }
+            smallest.recycle();
+            if (smallest == bitmap) {
+                return;
+            }
+            pool.remove(smallest);
+        }
+        pool.add(bitmap);
+    }
+}
@@ -0,0 +1,137 @@
+package com.spoon.simplecamerapreview;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+interface BurstCallback {
+    void onFrame(int index, Exception err, String nativePath, long latencyMs);
+    void onCompleted(JSONObject summary);
+}
+
+/**
+ * Issues a series of takePicture() requests keeping up to maxInFlight of them pending at once and
+ * spacing their start by at least intervalMs. Scheduling state is only touched on the main thread.
+ * When the fragment is removed during the burst no further picture is issued and the summary carries an error
+ * once the pending ones completed.
+ */
+public class BurstCapture {
+
+    private final CameraPreviewFragment fragment;
+    private int count;
+    private final long intervalMs;
+    private final int maxInFlight;
+    private final String flashMode;
+    private final BurstCallback burstCallback;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final long[] latenciesMs;
+
+    private int issued = 0;
+    private int inFlight = 0;
+    private int completed = 0;
+    private int failed = 0;
+    private long startedAt;
+    private long lastIssuedAt;
+    private boolean issueScheduled = false;
+    private String error;
+
+    public BurstCapture(CameraPreviewFragment fragment, int count, long intervalMs, int maxInFlight, String flashMode, BurstCallback burstCallback) {
+        this.fragment = fragment;
+        this.count = count;
+        this.intervalMs = intervalMs;
+        this.maxInFlight = maxInFlight;
+        this.flashMode = flashMode;
+        this.burstCallback = burstCallback;
+        this.latenciesMs = new long[count];
+    }
+
+    public void start() {
+        handler.post(() -> {
+            startedAt = SystemClock.elapsedRealtime();
+            issueNext();
+        });
+    }
+
+    private void issueNext() {
+        issueScheduled = false;
+        while (issued < count && inFlight < maxInFlight) {
+            if (!fragment.isAdded() || fragment.isRemoving()) {
+                stop("Camera closed during the burst");
+                return;
+            }
+
+            long now = SystemClock.elapsedRealtime();
+            long wait = issued > 0 ? lastIssuedAt + intervalMs - now : 0;
+            if (wait > 0) {
+                issueScheduled = true;
+                handler.postDelayed(this::issueNext, wait);
+                return;
+            }
+
+            int index = issued++;
+            inFlight++;
+            lastIssuedAt = now;
+            fragment.takePicture(flashMode, (Exception err, String nativePath, JSONObject details) -> handler.post(() -> {
+                long latencyMs = SystemClock.elapsedRealtime() - now;
+                latenciesMs[index] = latencyMs;
+                inFlight--;
+                completed++;
+                if (err != null) {
+                    failed++;
+                }
+                burstCallback.onFrame(index, err, nativePath, latencyMs);
+
+                if (completed == count) {
+                    burstCallback.onCompleted(getSummary());
+                } else if (!issueScheduled) {
+                    issueNext();
+                }
+            }));
+        }
+    }
+
+    /**
+     * Ends the burst with the pictures issued so far.
+     */
+    private void stop(String message) {
+        error = message;
+        count = issued;
+        if (completed == count) {
+            burstCallback.onCompleted(getSummary());
+        }
+    }
+
+    private JSONObject getSummary() {
+        long durationMs = SystemClock.elapsedRealtime() - startedAt;
+        JSONArray latencies = new JSONArray();
+        long totalLatencyMs = 0;
+        long maxLatencyMs = 0;
+        for (int i = 0; i < count; i++) {
+            long latencyMs = latenciesMs[i];
+            latencies.put(latencyMs);
+            totalLatencyMs += latencyMs;
+            maxLatencyMs = Math.max(maxLatencyMs, latencyMs);
+        }
+
+        JSONObject summary = new JSONObject();
+        try {
+            summary.put("done", true);
+            summary.put("count", count);
+            summary.put("failed", failed);
+            summary.put("durationMs", durationMs);
+            summary.put("fps", durationMs > 0 ? (count - failed) * 1000.0 / durationMs : 0);
+            summary.put("meanLatencyMs", count > 0 ? totalLatencyMs / count : 0);
+            summary.put("maxLatencyMs", maxLatencyMs);
+            summary.put("latenciesMs", latencies);
+            if (error != null) {
+                summary.put("error", error);
+            }
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        return summary;
+    }
+}
@@ -0,0 +1,115 @@
+package com.spoon.simplecamerapreview;
+
+import android.util.Size;
+import androidx.camera.view.PreviewView;
+import androidx.lifecycle.LiveData;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+
+/**
+ * The parts of ProcessCameraProvider, Camera, ImageCapture and Recorder that CameraPreviewFragment uses. The fragment
+ * builds and binds use cases through this interface only, which keeps the session logic apart from the CameraX calls.
+ * Every method is called on the main thread and every callback without an executor is delivered on it.
+ */
+public interface CameraBackend {
+
+    interface ProviderCallback {
+        void onProvider(Exception err, Provider provider);
+    }
+
+    interface CaptureCallback {
+        /**
+         * Receives the captured image, which the callback must close, or the error.
+         */
+        void onCaptured(Exception err, CapturedImage image);
+    }
+
+    interface SaveCallback {
+        void onSaved(Exception err);
+    }
+
+    interface RecordingListener {
+        void onStart();
+        void onFinalize(Exception err);
+    }
+
+    /**
+     * Marks the objects built by the backend that can be bound to a camera.
+     */
+    interface UseCaseHandle {
+    }
+
+    interface PhotoCapture extends UseCaseHandle {
+        void setFlashMode(String flashMode);
+
+        /**
+         * Captures a JPEG in memory and hands it to the callback on the executor.
+         */
+        void takePicture(Executor executor, CaptureCallback callback);
+
+        /**
+         * Captures a JPEG straight to file, with its Exif orientation set.
+         */
+        void takePicture(File file, Executor executor, SaveCallback callback);
+    }
+
+    interface VideoRecorder extends UseCaseHandle {
+        /**
+         * Starts recording to file, with the listener called on the executor. Throws SecurityException when audio
+         * is requested without the permission, before anything is recorded.
+         */
+        ActiveRecording startRecording(File file, boolean withAudio, Executor executor, RecordingListener listener);
+    }
+
+    interface ActiveRecording {
+        void stop();
+    }
+
+    interface Provider {
+        boolean isZslSupported(int direction, String lens);
+
+        /**
+         * Binds the use cases to the camera facing direction with the given lens, returning the bound camera.
+         * Throws IllegalArgumentException when no such camera exists or the camera cannot stream the combination.
+         */
+        BoundCamera bind(int direction, String lens, UseCaseHandle... useCases);
+
+        void unbind(UseCaseHandle... useCases);
+
+        void unbindAll();
+    }
+
+    interface BoundCamera {
+        boolean hasFlashUnit();
+
+        void enableTorch(boolean torchOn, TorchCallback torchCallback);
+    }
+
+    /**
+     * A JPEG held in memory until close().
+     */
+    interface CapturedImage {
+        ByteBuffer getJpeg();
+        int getWidth();
+        int getHeight();
+        int getRotationDegrees();
+        void close();
+    }
+
+    /**
+     * Delivers a provider able to open a camera facing direction. The same provider instance is delivered until
+     * the backend has to re-initialize.
+     */
+    void getProvider(int direction, ProviderCallback callback);
+
+    UseCaseHandle createPreview();
+
+    PhotoCapture createImageCapture(double aspectRatio, Size targetResolution, String captureMode);
+
+    VideoRecorder createVideoCapture(double aspectRatio);
+
+    UseCaseHandle createImageAnalysis(double aspectRatio, int targetWidth, FrameAnalyzer frameAnalyzer);
+
+    LiveData<PreviewView.StreamState> getPreviewStreamState();
+}
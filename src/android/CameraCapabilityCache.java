@@ -0,0 +1,283 @@
+package com.spoon.simplecamerapreview;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.ImageFormat;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.os.Build;
+import android.util.Log;
+import android.util.Size;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the camera characteristics the plugin needs so that CameraManager is only
+ * scanned once per device/OS build instead of on every setUpCamera(). A scan that finds no camera, for example
+ * because the camera service is not ready yet, is not kept and the next lookup scans again.
+ */
+public class CameraCapabilityCache {
+
+    private static final String TAG = "SimpleCameraPreview";
+    private static final String PREFERENCES_NAME = "SimpleCameraPreviewCapabilities";
+    private static final String KEY_FINGERPRINT = "fingerprint";
+    private static final String KEY_CAMERAS = "cameras";
+    private static final int CACHE_VERSION = 3;
+    private static CameraCapabilityCache instance;
+
+    private final Map<String, CameraCapabilities> camerasById;
+
+    public static class CameraCapabilities {
+        private final String cameraId;
+        private final int lensFacing;
+        private final float[] focalLengths;
+        private final Size[] jpegOutputSizes;
+        private final long[] jpegStallDurationsNs;
+        private final long[] jpegMinFrameDurationsNs;
+
+        CameraCapabilities(String cameraId, int lensFacing, float[] focalLengths, Size[] jpegOutputSizes, long[] jpegStallDurationsNs, long[] jpegMinFrameDurationsNs) {
+            this.cameraId = cameraId;
+            this.lensFacing = lensFacing;
+            this.focalLengths = focalLengths;
+            this.jpegOutputSizes = jpegOutputSizes;
+            this.jpegStallDurationsNs = jpegStallDurationsNs;
+            this.jpegMinFrameDurationsNs = jpegMinFrameDurationsNs;
+        }
+
+        public String getCameraId() {
+            return cameraId;
+        }
+
+        public int getLensFacing() {
+            return lensFacing;
+        }
+
+        public float[] getFocalLengths() {
+            return focalLengths;
+        }
+
+        public Size[] getJpegOutputSizes() {
+            return jpegOutputSizes;
+        }
+
+        public List<ResolutionPolicy.Candidate> getJpegResolutionCandidates() {
+            List<ResolutionPolicy.Candidate> candidates = new ArrayList<>(jpegOutputSizes.length);
+            for (int i = 0; i < jpegOutputSizes.length; i++) {
+                candidates.add(new ResolutionPolicy.Candidate(
+                        jpegOutputSizes[i].getWidth(),
+                        jpegOutputSizes[i].getHeight(),
+                        jpegStallDurationsNs[i],
+                        jpegMinFrameDurationsNs[i]
+                ));
+            }
+            return candidates;
+        }
+    }
+
+    private CameraCapabilityCache(Map<String, CameraCapabilities> camerasById) {
+        this.camerasById = camerasById;
+    }
+
+    public static synchronized CameraCapabilityCache getInstance(Context context) {
+        if (instance != null) {
+            return instance;
+        }
+
+        Context applicationContext = context.getApplicationContext();
+        SharedPreferences preferences = applicationContext.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        String fingerprint = getDeviceFingerprint();
+        if (fingerprint.equals(preferences.getString(KEY_FINGERPRINT, null))) {
+            instance = fromJson(preferences.getString(KEY_CAMERAS, null));
+        }
+
+        if (instance != null) {
+            return instance;
+        }
+
+        CameraCapabilityCache scanned = scan(applicationContext);
+        if (scanned.camerasById.isEmpty()) {
+            Log.w(TAG, "No camera found, scanning again on the next lookup");
+            return scanned;
+        }
+        instance = scanned;
+        preferences.edit()
+                .putString(KEY_FINGERPRINT, fingerprint)
+                .putString(KEY_CAMERAS, instance.toJson())
+                .apply();
+        return instance;
+    }
+
+    public static void warmUp(Context context) {
+        new Thread(() -> getInstance(context), "SimpleCameraPreview-capabilities").start();
+    }
+
+    public Size[] getJpegOutputSizes(int lensFacing) {
+        CameraCapabilities camera = getFirstCamera(lensFacing);
+        return camera != null ? camera.getJpegOutputSizes() : new Size[0];
+    }
+
+    public List<ResolutionPolicy.Candidate> getJpegResolutionCandidates(int lensFacing) {
+        CameraCapabilities camera = getFirstCamera(lensFacing);
+        return camera != null ? camera.getJpegResolutionCandidates() : new ArrayList<>();
+    }
+
+    public boolean hasLensFacing(int lensFacing) {
+        return getFirstCamera(lensFacing) != null;
+    }
+
+    public CameraCapabilities getCamera(String cameraId) {
+        return camerasById.get(cameraId);
+    }
+
+    public List<CameraCapabilities> getCameras(int lensFacing) {
+        List<CameraCapabilities> cameras = new ArrayList<>();
+        for (CameraCapabilities camera : camerasById.values()) {
+            if (camera.getLensFacing() == lensFacing) {
+                cameras.add(camera);
+            }
+        }
+        return Collections.unmodifiableList(cameras);
+    }
+
+    private CameraCapabilities getFirstCamera(int lensFacing) {
+        for (CameraCapabilities camera : camerasById.values()) {
+            if (camera.getLensFacing() == lensFacing) {
+                return camera;
+            }
+        }
+        return null;
+    }
+
+    private static String getDeviceFingerprint() {
+        return CACHE_VERSION + "|" + Build.FINGERPRINT + "|" + Build.VERSION.SDK_INT;
+    }
+
+    private static CameraCapabilityCache scan(Context context) {
+        Map<String, CameraCapabilities> camerasById = new LinkedHashMap<>();
+        try {
+            CameraManager cameraManager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+            for (String cameraId : cameraManager.getCameraIdList()) {
+                CameraCharacteristics characteristics = cameraManager.getCameraCharacteristics(cameraId);
+
+                Integer facing = characteristics.get(CameraCharacteristics.LENS_FACING);
+                if (facing == null || !isBackwardCompatible(characteristics)) {
+                    continue;
+                }
+
+                float[] focalLengths = characteristics.get(CameraCharacteristics.LENS_INFO_AVAILABLE_FOCAL_LENGTHS);
+                StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+                Size[] jpegOutputSizes = map != null ? map.getOutputSizes(ImageFormat.JPEG) : null;
+                if (jpegOutputSizes == null) {
+                    jpegOutputSizes = new Size[0];
+                }
+                long[] stallDurations = new long[jpegOutputSizes.length];
+                long[] minFrameDurations = new long[jpegOutputSizes.length];
+                for (int i = 0; i < jpegOutputSizes.length; i++) {
+                    stallDurations[i] = map.getOutputStallDuration(ImageFormat.JPEG, jpegOutputSizes[i]);
+                    minFrameDurations[i] = map.getOutputMinFrameDuration(ImageFormat.JPEG, jpegOutputSizes[i]);
+                }
+                camerasById.put(cameraId, new CameraCapabilities(
+                        cameraId,
+                        facing,
+                        focalLengths != null ? focalLengths : new float[0],
+                        jpegOutputSizes,
+                        stallDurations,
+                        minFrameDurations
+                ));
+            }
+        } catch (CameraAccessException e) {
+            Log.e(TAG, "Unable to scan camera capabilities: " + e.getMessage());
+            e.printStackTrace();
+        }
+        return new CameraCapabilityCache(camerasById);
+    }
+
+    private static boolean isBackwardCompatible(CameraCharacteristics characteristics) {
+        // CameraX ignores cameras that cannot be driven with the regular capture pipeline
+        int[] capabilities = characteristics.get(CameraCharacteristics.REQUEST_AVAILABLE_CAPABILITIES);
+        if (capabilities == null) {
+            return false;
+        }
+        for (int capability : capabilities) {
+            if (capability == CameraCharacteristics.REQUEST_AVAILABLE_CAPABILITIES_BACKWARD_COMPATIBLE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String toJson() {
+        JSONArray cameras = new JSONArray();
+        try {
+            for (CameraCapabilities camera : camerasById.values()) {
+                JSONArray focalLengths = new JSONArray();
+                for (float focalLength : camera.getFocalLengths()) {
+                    focalLengths.put((double) focalLength);
+                }
+                JSONArray sizes = new JSONArray();
+                Size[] jpegOutputSizes = camera.getJpegOutputSizes();
+                for (int j = 0; j < jpegOutputSizes.length; j++) {
+                    sizes.put(jpegOutputSizes[j].getWidth());
+                    sizes.put(jpegOutputSizes[j].getHeight());
+                    sizes.put(camera.jpegStallDurationsNs[j]);
+                    sizes.put(camera.jpegMinFrameDurationsNs[j]);
+                }
+
+                JSONObject entry = new JSONObject();
+                entry.put("id", camera.getCameraId());
+                entry.put("facing", camera.getLensFacing());
+                entry.put("focalLengths", focalLengths);
+                entry.put("jpegSizes", sizes);
+                cameras.put(entry);
+            }
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        return cameras.toString();
+    }
+
+    private static CameraCapabilityCache fromJson(String json) {
+        if (json == null) {
+            return null;
+        }
+
+        Map<String, CameraCapabilities> camerasById = new LinkedHashMap<>();
+        try {
+            JSONArray cameras = new JSONArray(json);
+            for (int i = 0; i < cameras.length(); i++) {
+                JSONObject entry = cameras.getJSONObject(i);
+
+                JSONArray focalLengthsJson = entry.getJSONArray("focalLengths");
+                float[] focalLengths = new float[focalLengthsJson.length()];
+                for (int j = 0; j < focalLengths.length; j++) {
+                    focalLengths[j] = (float) focalLengthsJson.getDouble(j);
+                }
+
+                JSONArray sizesJson = entry.getJSONArray("jpegSizes");
+                Size[] jpegOutputSizes = new Size[sizesJson.length() / 4];
+                long[] stallDurations = new long[jpegOutputSizes.length];
+                long[] minFrameDurations = new long[jpegOutputSizes.length];
+                for (int j = 0; j < jpegOutputSizes.length; j++) {
+                    jpegOutputSizes[j] = new Size(sizesJson.getInt(j * 4), sizesJson.getInt(j * 4 + 1));
+                    stallDurations[j] = sizesJson.getLong(j * 4 + 2);
+                    minFrameDurations[j] = sizesJson.getLong(j * 4 + 3);
+                }
+
+                String cameraId = entry.getString("id");
+                camerasById.put(cameraId, new CameraCapabilities(cameraId, entry.getInt("facing"), focalLengths, jpegOutputSizes, stallDurations, minFrameDurations));
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "Discarding persisted camera capabilities: " + e.getMessage());
+            return null;
+        }
+        return camerasById.isEmpty() ? null : new CameraCapabilityCache(camerasById);
+    }
+}
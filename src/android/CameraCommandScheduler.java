@@ -0,0 +1,199 @@
+package com.spoon.simplecamerapreview;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import org.apache.cordova.CallbackContext;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import java.util.ArrayDeque;
+import java.util.EnumSet;
+import java.util.Iterator;
+
+interface CameraCommand {
+    void run(Runnable done);
+}
+
+/**
+ * Runs the plugin's camera commands one at a time on the main thread so that the Cordova thread never waits on
+ * the camera. A command holds the queue until it calls done; the camera session state is checked when the command
+ * starts rather than when it is submitted, and a command sharing a coalesce key with a later one is dropped.
+ * A command that does not call done within its timeout is given up on so that it cannot stall the queue.
+ */
+public class CameraCommandScheduler {
+
+    public enum State {
+        CLOSED,
+        OPENING,
+        OPEN,
+        CLOSING
+    }
+
+    private static final String TAG = "SimpleCameraPreview";
+    static final long COMMAND_TIMEOUT_MS = 10000;
+    private static final int MAX_TIMINGS = 50;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final ArrayDeque<Command> pending = new ArrayDeque<>();
+    private final ArrayDeque<JSONObject> timings = new ArrayDeque<>();
+    private Command running;
+    private volatile State state = State.CLOSED;
+
+    /**
+     * Queues a command. It is rejected with rejectionMessage if the session is not in one of allowedStates when
+     * its turn comes. A pending command with the same coalesceKey is superseded.
+     */
+    public void submit(String name, String coalesceKey, EnumSet<State> allowedStates, String rejectionMessage, CallbackContext callbackContext, CameraCommand body) {
+        submit(name, coalesceKey, allowedStates, rejectionMessage, callbackContext, COMMAND_TIMEOUT_MS, body);
+    }
+
+    /**
+     * Queues a command that may hold the queue for up to timeoutMs, for commands known to run longer than
+     * COMMAND_TIMEOUT_MS.
+     */
+    public void submit(String name, String coalesceKey, EnumSet<State> allowedStates, String rejectionMessage, CallbackContext callbackContext, long timeoutMs, CameraCommand body) {
+        Command command = new Command(name, coalesceKey, allowedStates, rejectionMessage, callbackContext, timeoutMs, body);
+        synchronized (this) {
+            if (coalesceKey != null) {
+                Iterator<Command> iterator = pending.iterator();
+                while (iterator.hasNext()) {
+                    Command queued = iterator.next();
+                    if (coalesceKey.equals(queued.coalesceKey)) {
+                        iterator.remove();
+                        queued.startedAt = SystemClock.elapsedRealtime();
+                        queued.callbackContext.error("Superseded by a later " + name + " call");
+                        record(queued, "superseded");
+                    }
+                }
+            }
+            pending.add(command);
+        }
+        handler.post(this::runNext);
+    }
+
+    /**
+     * Only called from a running command, on the main thread.
+     */
+    public void setState(State state) {
+        this.state = state;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public synchronized JSONObject getTimings() {
+        JSONObject data = new JSONObject();
+        try {
+            data.put("state", state.name().toLowerCase());
+            data.put("pending", pending.size());
+            data.put("running", running != null ? running.name : JSONObject.NULL);
+            data.put("commands", new JSONArray(timings));
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        return data;
+    }
+
+    private void runNext() {
+        Command command;
+        synchronized (this) {
+            if (running != null || pending.isEmpty()) {
+                return;
+            }
+            command = pending.poll();
+            running = command;
+        }
+
+        command.startedAt = SystemClock.elapsedRealtime();
+        if (!command.allowedStates.contains(state)) {
+            command.callbackContext.error(command.rejectionMessage);
+            finish(command, "rejected");
+            return;
+        }
+
+        handler.postDelayed(command.timeout, command.timeoutMs);
+        try {
+            command.body.run(() -> handler.post(() -> finish(command, "done")));
+        } catch (Exception e) {
+            Log.e(TAG, command.name + " failed: " + e.getMessage());
+            e.printStackTrace();
+            command.callbackContext.error(e.getMessage());
+            finish(command, "failed");
+        }
+    }
+
+    private void finish(Command command, String outcome) {
+        synchronized (this) {
+            if (running != command) {
+                return;
+            }
+            running = null;
+            record(command, outcome);
+        }
+        handler.removeCallbacks(command.timeout);
+        runNext();
+    }
+
+    /**
+     * Settles a transitional state left by a command that timed out. An enable that never completed has still
+     * attached its fragment, so the session counts as open and a disable can remove it.
+     */
+    private void settleState() {
+        if (state == State.OPENING) {
+            Log.w(TAG, "Camera start did not complete, the session is now open");
+            state = State.OPEN;
+        } else if (state == State.CLOSING) {
+            state = State.CLOSED;
+        }
+    }
+
+    private void record(Command command, String outcome) {
+        long finishedAt = SystemClock.elapsedRealtime();
+        JSONObject timing = new JSONObject();
+        try {
+            timing.put("command", command.name);
+            timing.put("outcome", outcome);
+            timing.put("queueMs", command.startedAt - command.submittedAt);
+            timing.put("execMs", finishedAt - command.startedAt);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        if (timings.size() == MAX_TIMINGS) {
+            timings.poll();
+        }
+        timings.add(timing);
+    }
+
+    private class Command {
+        final String name;
+        final String coalesceKey;
+        final EnumSet<State> allowedStates;
+        final String rejectionMessage;
+        final CallbackContext callbackContext;
+        final CameraCommand body;
+        final long timeoutMs;
+        final long submittedAt = SystemClock.elapsedRealtime();
+        final Runnable timeout;
+        long startedAt;
+
+        Command(String name, String coalesceKey, EnumSet<State> allowedStates, String rejectionMessage, CallbackContext callbackContext, long timeoutMs, CameraCommand body) {
+            this.name = name;
+            this.coalesceKey = coalesceKey;
+            this.allowedStates = allowedStates;
+            this.rejectionMessage = rejectionMessage;
+            this.callbackContext = callbackContext;
+            this.timeoutMs = timeoutMs;
+            this.body = body;
+            // A command that never calls done would stall every later one, so it is given up on after a while
+            this.timeout = () -> {
+                Log.w(TAG, name + " did not complete within " + timeoutMs + "ms, running the next command");
+                settleState();
+                callbackContext.error(name + " timed out after " + timeoutMs + "ms");
+                finish(this, "timeout");
+            };
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.spoon.simplecamerapreview;
+
+import android.os.SystemClock;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Process wide latency histograms in milliseconds for every stage of the camera operations. The histograms are
+ * created once, so recording from any thread costs a few atomic operations and no allocation.
+ */
+public final class CameraMetrics {
+
+    public enum Stage {
+        ENABLE_PERMISSION("enable.permission"),
+        ENABLE_PROVIDER("enable.provider"),
+        ENABLE_BIND("enable.bind"),
+        ENABLE_FIRST_FRAME("enable.firstFrame"),
+        ENABLE_TOTAL("enable.total"),
+        SWITCH_CAMERA_BIND("switchCameraTo.bind"),
+        SWITCH_CAMERA_FIRST_FRAME("switchCameraTo.firstFrame"),
+        TAKE_PICTURE_CAPTURE("takePicture.capture"),
+        TAKE_PICTURE_EXIF("takePicture.exif"),
+        TAKE_PICTURE_CALLBACK("takePicture.callback"),
+        TAKE_PICTURE_TOTAL("takePicture.total"),
+        TORCH_SWITCH("torchSwitch"),
+        VIDEO_START("video.start"),
+        VIDEO_FINALIZE("video.finalize");
+
+        private final String key;
+
+        Stage(String key) {
+            this.key = key;
+        }
+
+        public String getKey() {
+            return key;
+        }
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+    private static final LatencyHistogram[] histograms = new LatencyHistogram[STAGES.length];
+    private static volatile long resetAt = SystemClock.elapsedRealtime();
+
+    static {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    private CameraMetrics() {
+    }
+
+    public static void record(Stage stage, long durationMs) {
+        histograms[stage.ordinal()].record(durationMs);
+    }
+
+    public static void recordSince(Stage stage, long startedAt) {
+        record(stage, SystemClock.elapsedRealtime() - startedAt);
+    }
+
+    public static void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+        resetAt = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Count, mean, percentiles and maximum of every stage recorded since the last reset.
+     */
+    public static JSONObject toJson() {
+        JSONObject metrics = new JSONObject();
+        JSONObject stages = new JSONObject();
+        try {
+            for (Stage stage : STAGES) {
+                LatencyHistogram histogram = histograms[stage.ordinal()];
+                JSONObject stats = new JSONObject();
+                stats.put("count", histogram.getCount());
+                stats.put("meanMs", histogram.getMean());
+                stats.put("p50Ms", histogram.getPercentile(0.5));
+                stats.put("p90Ms", histogram.getPercentile(0.9));
+                stats.put("p99Ms", histogram.getPercentile(0.99));
+                stats.put("maxMs", histogram.getMax());
+                stages.put(stage.getKey(), stats);
+            }
+            metrics.put("sinceResetMs", SystemClock.elapsedRealtime() - resetAt);
+            metrics.put("stages", stages);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        return metrics;
+    }
+}
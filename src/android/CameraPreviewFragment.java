@@ -3,19 +3,13 @@ package com.spoon.simplecamerapreview;
 import android.annotation.SuppressLint;
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.ImageFormat;
-import android.hardware.camera2.CameraAccessException;
-import android.hardware.camera2.CameraCharacteristics;
-import android.hardware.camera2.CameraManager;
-import android.hardware.camera2.params.StreamConfigurationMap;
+import android.graphics.BitmapFactory;
 import android.location.Location;
-import android.media.ThumbnailUtils;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 import android.util.Size;
 import android.view.LayoutInflater;
@@ -24,52 +18,43 @@ import android.view.ViewGroup;
 import android.widget.RelativeLayout;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import androidx.camera.camera2.internal.Camera2CameraInfoImpl;
-import androidx.camera.core.AspectRatio;
-import androidx.camera.core.Camera;
-import androidx.camera.core.CameraInfo;
 import androidx.camera.core.CameraSelector;
-import androidx.camera.core.ImageCapture;
-import androidx.camera.core.ImageCaptureException;
-import androidx.camera.core.Preview;
-import androidx.camera.core.ResolutionInfo;
-import androidx.camera.core.resolutionselector.AspectRatioStrategy;
-import androidx.camera.core.resolutionselector.ResolutionSelector;
-import androidx.camera.core.resolutionselector.ResolutionStrategy;
-import androidx.camera.lifecycle.ProcessCameraProvider;
-import androidx.camera.video.FileOutputOptions;
-import androidx.camera.video.PendingRecording;
-import androidx.camera.video.Quality;
-import androidx.camera.video.QualitySelector;
-import androidx.camera.video.Recorder;
-import androidx.camera.video.Recording;
-import androidx.camera.video.VideoCapture;
-import androidx.camera.video.VideoRecordEvent;
 import androidx.camera.view.PreviewView;
 import androidx.core.content.ContextCompat;
 import androidx.exifinterface.media.ExifInterface;
 import androidx.fragment.app.Fragment;
-import com.google.common.util.concurrent.ListenableFuture;
+import androidx.lifecycle.Observer;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
 import java.util.UUID;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 
 interface CameraCallback {
-    void onCompleted(Exception err, String nativePath);
+    void onCompleted(Exception err, String nativePath, JSONObject details);
+}
+
+interface CaptureBytesCallback {
+    void onCompleted(Exception err, byte[] jpeg, String nativePath, JSONObject details);
 }
 
 interface VideoCallback {
     void onStart(Boolean recording);
-    void onStop(Boolean recording, String nativePath, String thumbnail);
+    void onStop(Boolean recording, String nativePath);
+    void onThumbnail(String nativePath, String thumbnail);
     void onError(String errMessage);
 }
 
@@ -86,7 +71,11 @@ interface HasFlashCallback {
 }
 
 interface CameraSwitchedCallback {
-    void onSwitch(boolean result);
+    void onSwitch(boolean result, JSONObject details);
+}
+
+interface FirstFrameCallback {
+    void onFirstFrame(long firstFrameMs);
 }
 
 interface HasUltraWideCameraCallback {
@@ -100,53 +89,60 @@ interface HasFrontCameraCallback {
 public class CameraPreviewFragment extends Fragment {
 
     private PreviewView viewFinder;
-    private Preview preview;
-    private ImageCapture imageCapture;
-    private VideoCapture<Recorder> videoCapture;
-    Recording recording = null;
-    private Camera camera;
+    private CameraBackend cameraBackend;
+    private CameraBackend.UseCaseHandle preview;
+    private CameraBackend.PhotoCapture imageCapture;
+    private CameraBackend.VideoRecorder videoCapture;
+    CameraBackend.ActiveRecording recording = null;
+    private long videoStopRequestedAt = 0;
+    private CameraBackend.BoundCamera camera;
     private CameraStartedCallback startCameraCallback;
-    private Location location;
-    private static int direction;
-    private int targetSize;
-    private boolean torchActivated = false;
+    private volatile Location location;
+    private volatile boolean torchActivated = false;
     private static final String TAG = "SimpleCameraPreview";
-    private String lens;
-    private double aspectRatio;
-    private static final double ASPECT_RATIO_3_BY_4 = 3.0 / 4.0;
-    private static final double ASPECT_RATIO_9_BY_16 = 9.0 / 16.0;
+    private CameraSessionConfig config = CameraSessionConfig.DEFAULT;
+    private CameraSessionConfig boundConfig = null;
     private Size targetResolution = null;
-    private CameraSelector cameraSelector = null;
+    private CameraBackend.Provider boundCameraProvider = null;
+    private static final long FIRST_FRAME_TIMEOUT_MS = 3000;
+    private static final EnumSet<CameraSessionConfig.Change> RESOLUTION_CHANGES = EnumSet.of(
+            CameraSessionConfig.Change.ASPECT_RATIO,
+            CameraSessionConfig.Change.TARGET_SIZE,
+            CameraSessionConfig.Change.RESOLUTION_POLICY);
+    public static final String SESSION_MODE_PHOTO = "photo";
+    public static final String SESSION_MODE_VIDEO = "video";
+    public static final String SESSION_MODE_PHOTO_VIDEO = "photo+video";
+    private boolean videoCaptureRequested = false;
+    private final Handler videoIdleHandler = new Handler(Looper.getMainLooper());
+    private static final int JPEG_WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final int EXIF_HEADROOM_BYTES = 1024;
+    private static final int RENDITION_JPEG_QUALITY = 90;
+    private CaptureStore captureStore;
+    private CameraBackend.UseCaseHandle imageAnalysis = null;
+    private final FrameAnalyzer frameAnalyzer = new FrameAnalyzer();
+    private int analysisTargetWidth = 0;
+    private int boundAnalysisTargetWidth = 0;
+    private BestShotSelector bestShotSelector = null;
+    public static final String CAPTURE_MODE_QUALITY = "quality";
+    public static final String CAPTURE_MODE_LATENCY = "latency";
+    public static final String CAPTURE_MODE_ZSL = "zsl";
+    private String imageCaptureMode = null;
+    public static final String FLASH_MODE_AUTO = "auto";
+    public static final String FLASH_MODE_ON = "on";
+    public static final String FLASH_MODE_OFF = "off";
 
     public CameraPreviewFragment() {
 
     }
 
     @SuppressLint("ValidFragment")
-    public CameraPreviewFragment(JSONObject options, CameraStartedCallback cameraStartedCallback) {
-        try {
-            this.direction = options.getInt("direction");
-        } catch (JSONException e) {
-            this.direction = CameraSelector.LENS_FACING_BACK;
-            e.printStackTrace();
-        }
-        try {
-            this.targetSize = options.getInt("targetSize");
-        } catch (JSONException e) {
-            this.targetSize = 0;
-            e.printStackTrace();
-        }
-        try {
-            this.lens = options.getString("lens");
-        } catch (JSONException e) {
-            this.lens = "default";
-            e.printStackTrace();
-        }
-        try {
-            aspectRatio = options.getDouble("aspectRatio");
-        } catch (JSONException e) {
-            aspectRatio = ASPECT_RATIO_3_BY_4;
-            e.printStackTrace();
+    public CameraPreviewFragment(CameraSessionConfig config, CameraStartedCallback cameraStartedCallback) {
+        this.config = config;
+        if (config.getBestShotFrames() > 0) {
+            // Registered before the first bind so ImageAnalysis is bound together with the preview
+            bestShotSelector = new BestShotSelector(config.getBestShotFrames());
+            analysisTargetWidth = config.getBestShotTargetWidth();
+            frameAnalyzer.addConsumer(bestShotSelector);
         }
         startCameraCallback = cameraStartedCallback;
     }
@@ -160,210 +156,121 @@ public class CameraPreviewFragment extends Fragment {
         containerLayoutParams.addRule(RelativeLayout.ALIGN_PARENT_START);
         containerView.setLayoutParams(containerLayoutParams);
 
+        captureStore = CaptureStore.getInstance(requireContext());
         viewFinder = new PreviewView(getActivity());
         viewFinder.setLayoutParams(new RelativeLayout.LayoutParams(RelativeLayout.LayoutParams.MATCH_PARENT, RelativeLayout.LayoutParams.MATCH_PARENT));
         containerView.addView(viewFinder);
+        cameraBackend = new CameraXBackend(requireActivity(), viewFinder);
         startCamera();
         return containerView;
     }
 
     public void startCamera() {
-        ListenableFuture<ProcessCameraProvider> cameraProviderFuture = ProcessCameraProvider.getInstance(getActivity());
-        cameraProviderFuture.addListener(() -> {
-            ProcessCameraProvider cameraProvider = null;
-            try {
-                cameraProvider = cameraProviderFuture.get();
-            } catch (ExecutionException | InterruptedException e) {
-                Log.e(TAG, "startCamera: " + e.getMessage());
-                e.printStackTrace();
+        long startedAt = SystemClock.elapsedRealtime();
+        cameraBackend.getProvider(config.getDirection(), (Exception err, CameraBackend.Provider cameraProvider) -> {
+            if (err != null) {
                 startCameraCallback.onCameraStarted(new Exception("Unable to start camera"));
                 return;
             }
 
-            JSONObject options = new JSONObject();
-            try {
-                options.put("lens", lens);
-            } catch (JSONException e) {
-                startCameraCallback.onCameraStarted(new Exception("Unable to set the lens option"));
-            }
-            try {
-                options.put("direction", direction);
-            } catch (JSONException e) {
-                startCameraCallback.onCameraStarted(new Exception("Unable to set the Direction option"));
-            }
-            try {
-                options.put("aspectRatio", aspectRatio);
-            } catch (JSONException e) {
-                startCameraCallback.onCameraStarted(new Exception("Unable to set the aspectRatio option"));
-            }
-
-            setUpCamera(options, cameraProvider);
-            preview.setSurfaceProvider(viewFinder.getSurfaceProvider());
+            long providerReadyAt = SystemClock.elapsedRealtime();
+            CameraMetrics.record(CameraMetrics.Stage.ENABLE_PROVIDER, providerReadyAt - startedAt);
+            setUpCamera(config, cameraProvider);
+            CameraMetrics.recordSince(CameraMetrics.Stage.ENABLE_BIND, providerReadyAt);
+            observeFirstFrame(startedAt, false, (long firstFrameMs) -> CameraMetrics.record(CameraMetrics.Stage.ENABLE_FIRST_FRAME, firstFrameMs));
 
             if (startCameraCallback != null) {
                 startCameraCallback.onCameraStarted(null);
             }
-        }, ContextCompat.getMainExecutor(getActivity()));
+        });
     }
 
-    @SuppressLint("RestrictedApi")
     public void deviceHasUltraWideCamera(HasUltraWideCameraCallback hasUltraWideCameraCallback) {
-        ListenableFuture<ProcessCameraProvider> cameraProviderFuture = ProcessCameraProvider.getInstance(getActivity());
-        cameraProviderFuture.addListener(() -> {
-            ProcessCameraProvider cameraProvider = null;
-            try {
-                cameraProvider = cameraProviderFuture.get();
-            } catch (ExecutionException | InterruptedException e) {
-                Log.e(TAG, "Error occurred while trying to obtain the camera provider: " + e.getMessage());
-                e.printStackTrace();
-                hasUltraWideCameraCallback.onResult(false);
-                return;
+        boolean defaultCamera = false;
+        boolean ultraWideCamera = false;
+        List<CameraCapabilityCache.CameraCapabilities> backCameras = CameraCapabilityCache.getInstance(getActivity()).getCameras(CameraSelector.LENS_FACING_BACK);
+
+        for (CameraCapabilityCache.CameraCapabilities backCamera : backCameras) {
+            float[] focalLengths = backCamera.getFocalLengths();
+            if (focalLengths.length == 0) {
+                continue;
             }
-
-            List<CameraInfo> cameraInfos = cameraProvider.getAvailableCameraInfos();
-            boolean defaultCamera = false;
-            boolean ultraWideCamera = false;
-            List<Camera2CameraInfoImpl> backCameras = getCamera2CameraInfos(cameraInfos);
-
-            for (Camera2CameraInfoImpl backCamera : backCameras) {
-                if (backCamera.getCameraCharacteristicsCompat().get(CameraCharacteristics.LENS_INFO_AVAILABLE_FOCAL_LENGTHS)[0] >= 2.4) {
-                    defaultCamera = true;
-                } else if( backCamera.getCameraCharacteristicsCompat().get(CameraCharacteristics.LENS_INFO_AVAILABLE_FOCAL_LENGTHS)[0] < 2.4) {
-                    ultraWideCamera = true;
-                }
+            if (focalLengths[0] >= 2.4) {
+                defaultCamera = true;
+            } else {
+                ultraWideCamera = true;
             }
+        }
 
-            hasUltraWideCameraCallback.onResult(defaultCamera == true && ultraWideCamera == true);
-        }, ContextCompat.getMainExecutor(getActivity()));
+        hasUltraWideCameraCallback.onResult(defaultCamera && ultraWideCamera);
     }
 
     public void deviceHasFrontCamera(HasFrontCameraCallback hasFrontCameraCallback) {
-        ListenableFuture<ProcessCameraProvider> cameraProviderFuture = ProcessCameraProvider.getInstance(getActivity());
-        cameraProviderFuture.addListener(() -> {
-            ProcessCameraProvider cameraProvider = null;
-            try {
-                cameraProvider = cameraProviderFuture.get();
-            } catch (ExecutionException | InterruptedException e) {
-                Log.e(TAG, "Error occurred while trying to obtain the camera provider: " + e.getMessage());
-                e.printStackTrace();
-                hasFrontCameraCallback.onResult(false);
-                return;
-            }
-
-            List<CameraInfo> cameraInfos = cameraProvider.getAvailableCameraInfos();
-            for (CameraInfo cameraInfo : cameraInfos) {
-                if (cameraInfo.getLensFacing() == CameraSelector.LENS_FACING_FRONT) {
-                    hasFrontCameraCallback.onResult(true);
-                    return;
-                }
-            }
-
-            hasFrontCameraCallback.onResult(false);
-        }, ContextCompat.getMainExecutor(getActivity()));
+        hasFrontCameraCallback.onResult(CameraCapabilityCache.getInstance(getActivity()).hasLensFacing(CameraSelector.LENS_FACING_FRONT));
     }
 
-    public static Size calculateResolution(Context context, int desiredWidthPx, double aspectRatio) {
-        // Get all supported JPEG output sizes
-        Size[] supportedSizes = getSupportedResolutions(context, direction);
-
-        // Collect only those sizes matching the exact ratio
-        List<Size> matchingResolutions = new ArrayList<>();
-        for (Size size : supportedSizes) {
-            // Calculate the aspect ratio for the current resolution
-            double calculatedAspectRatio = (double) size.getHeight() / size.getWidth();
-
-            // Check if the calculated aspect ratio is close enough to the requested aspect ratio
-            if (Math.abs(calculatedAspectRatio - (aspectRatio)) < 0.01) {
-                matchingResolutions.add(size);
-            }
-        }
-
-        // If no exact matches, consider all supported sizes
-        if (matchingResolutions.isEmpty()) {
-            matchingResolutions = Arrays.asList(supportedSizes);
-        }
-
-        if (desiredWidthPx <= 0) {
-            // If no target size specified, return the highest resolution that matches the aspect ratio
-            Size highestResolution = matchingResolutions.get(0);
-            for (Size candidate : matchingResolutions) {
-                if (candidate.getWidth() > highestResolution.getWidth()) {
-                    highestResolution = candidate;
-                }
-            }
-            return highestResolution;
-        }
-
-        // Pick the one whose width is closest to desiredWidthPx
-        Size bestMatch = matchingResolutions.get(0);
-        int smallestDifference = Math.abs(bestMatch.getWidth() - desiredWidthPx);
-        for (Size candidate : matchingResolutions) {
-            int difference = Math.abs(candidate.getWidth() - desiredWidthPx);
-            if (difference < smallestDifference) {
-                smallestDifference = difference;
-                bestMatch = candidate;
-            }
+    public static Size calculateResolution(Context context, int lensFacing, int desiredWidthPx, double aspectRatio, ResolutionPolicy resolutionPolicy) {
+        List<ResolutionPolicy.Candidate> candidates = CameraCapabilityCache.getInstance(context).getJpegResolutionCandidates(lensFacing);
+        ResolutionPolicy.Candidate bestMatch = resolutionPolicy.select(candidates, aspectRatio, desiredWidthPx);
+        if (bestMatch == null) {
+            return null;
         }
-        return bestMatch;
+        return new Size(bestMatch.getWidth(), bestMatch.getHeight());
     }
 
     public static Size[] getSupportedResolutions(Context context, int lensFacing) {
-        try {
-            CameraManager cameraManager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
-            for (String cameraId : cameraManager.getCameraIdList()) {
-                CameraCharacteristics characteristics = cameraManager.getCameraCharacteristics(cameraId);
-
-                Integer facing = characteristics.get(CameraCharacteristics.LENS_FACING);
-                if (facing != null && facing == lensFacing) {
-                    StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
-                    if (map != null) {
-                        return map.getOutputSizes(ImageFormat.JPEG);
-                    }
-                }
-            }
-        } catch (CameraAccessException e) {
-            e.printStackTrace();
-        }
-        return new Size[0];
+        return CameraCapabilityCache.getInstance(context).getJpegOutputSizes(lensFacing);
     }
     
     public void torchSwitch(boolean torchOn, TorchCallback torchCallback) {
-        if (!camera.getCameraInfo().hasFlashUnit()) {
+        if (!camera.hasFlashUnit()) {
             torchCallback.onEnabled(new Exception("No flash unit present"));
             return;
         }
-        try {
-            camera.getCameraControl().enableTorch(torchOn).get();
+        long requestedAt = SystemClock.elapsedRealtime();
+        camera.enableTorch(torchOn, (Exception err) -> {
+            if (err != null) {
+                torchCallback.onEnabled(new Exception("Failed to switch " + (torchOn ? "on" : "off") + " torch: " + err.getMessage(), err));
+                return;
+            }
+            torchActivated = torchOn;
+            CameraMetrics.recordSince(CameraMetrics.Stage.TORCH_SWITCH, requestedAt);
             torchCallback.onEnabled(null);
-        } catch (Exception e) {
-            torchCallback.onEnabled(new Exception("Failed to switch " + (torchOn ? "on" : "off") + " torch: " + e.getMessage(), e));
-            return;
-        }
-
-        torchActivated = torchOn;
+        });
     }
 
     public void hasFlash(HasFlashCallback hasFlashCallback) {
-        hasFlashCallback.onResult(camera.getCameraInfo().hasFlashUnit());
+        hasFlashCallback.onResult(camera.hasFlashUnit());
     }
 
-    public void startVideoCapture(VideoCallback videoCallback, boolean recordWithAudio, int videoDuration) {
+    public void startVideoCapture(VideoCallback videoCallback, boolean recordWithAudio, int videoDuration, int thumbnailMaxEdge) {
         if (recording != null) {
-            recording.stop();
-            recording = null;
+            stopVideoCapture();
             return;
         }
 
+        long requestedAt = SystemClock.elapsedRealtime();
+
+        ensureVideoCaptureBound((Exception err) -> {
+            if (err != null) {
+                videoCallback.onError(err.getMessage());
+                return;
+            }
+            startRecording(videoCallback, recordWithAudio, videoDuration, thumbnailMaxEdge);
+        });
+    }
+
+    private void startRecording(VideoCallback videoCallback, boolean recordWithAudio, int videoDuration, int thumbnailMaxEdge) {
         UUID uuid = UUID.randomUUID();
         String filename = uuid.toString() + ".mp4";
+        // The recording can finalize after the fragment was detached, the thumbnail still needs a context then
+        Context applicationContext = getContext().getApplicationContext();
 
         File videoFile = new File(
                 getContext().getFilesDir(),
                 filename
         );
 
-        FileOutputOptions outputOptions = new FileOutputOptions.Builder(videoFile).build();
-
         final Handler handler = new Handler(Looper.getMainLooper());
         handler.postDelayed(new Runnable() {
             @Override
@@ -372,96 +279,59 @@ public class CameraPreviewFragment extends Fragment {
             }
         }, videoDuration);
 
-        PendingRecording pendingRecording = videoCapture.getOutput()
-                .prepareRecording(this.getContext().getApplicationContext(), outputOptions);
-        if (recordWithAudio) {
-            try {
-                pendingRecording.withAudioEnabled();
-            } catch (SecurityException e) {
-                videoCallback.onError(e.getMessage());
-            }
-        }
-        recording = pendingRecording.start(ContextCompat.getMainExecutor(this.getContext()), videoRecordEvent -> {
-            if (videoRecordEvent instanceof VideoRecordEvent.Start) {
+        CameraBackend.RecordingListener listener = new CameraBackend.RecordingListener() {
+            @Override
+            public void onStart() {
+                CameraMetrics.recordSince(CameraMetrics.Stage.VIDEO_START, requestedAt);
                 videoCallback.onStart(true);
-            } else if (videoRecordEvent instanceof VideoRecordEvent.Finalize) {
-                VideoRecordEvent.Finalize finalizeEvent = (VideoRecordEvent.Finalize) videoRecordEvent;
+            }
+
+            @Override
+            public void onFinalize(Exception err) {
                 handler.removeCallbacksAndMessages(null);
-                if (finalizeEvent.hasError()) {
-                    int errorCode = finalizeEvent.getError();
-                    Throwable errorCause = finalizeEvent.getCause();
-                    videoCallback.onError(errorCode + " " + errorCause);
+                if (videoStopRequestedAt > 0) {
+                    CameraMetrics.recordSince(CameraMetrics.Stage.VIDEO_FINALIZE, videoStopRequestedAt);
+                    videoStopRequestedAt = 0;
+                }
+                if (err != null) {
+                    videoCallback.onError(err.getMessage());
                 } else {
-                    videoCallback.onStop(false, Uri.fromFile(videoFile).toString(), generateVideoThumbnail(videoFile));
-                    Uri savedUri = finalizeEvent.getOutputResults().getOutputUri();
+                    String nativePath = Uri.fromFile(videoFile).toString();
+                    registerCapture(nativePath, CaptureStore.KIND_VIDEO);
+                    videoCallback.onStop(false, nativePath);
+                    VideoThumbnailGenerator.generate(applicationContext, videoFile, thumbnailMaxEdge, (String thumbnail) -> {
+                        registerCapture(thumbnail, CaptureStore.KIND_THUMBNAIL);
+                        videoCallback.onThumbnail(nativePath, thumbnail);
+                    });
                 }
                 recording = null;
+                scheduleVideoCaptureUnbind();
             }
-        });
+        };
+        Executor mainExecutor = ContextCompat.getMainExecutor(this.getContext());
+        try {
+            recording = videoCapture.startRecording(videoFile, recordWithAudio, mainExecutor, listener);
+        } catch (SecurityException e) {
+            videoCallback.onError(e.getMessage());
+            recording = videoCapture.startRecording(videoFile, false, mainExecutor, listener);
+        }
     }
 
     public void stopVideoCapture() {
         if (recording != null) {
+            videoStopRequestedAt = SystemClock.elapsedRealtime();
             recording.stop();
             recording = null;
         }
     }
 
-    public String generateVideoThumbnail(File videoFile) {
-        String thumbnailUri = "";
-        if (getContext() == null) { return thumbnailUri; }
-
-        String filename = "video_thumb_" + UUID.randomUUID().toString() + ".jpg";
-        File thumbnail = new File(getContext().getFilesDir(), filename);
-        Bitmap bitmap = null;
-        Size size = null;
-
-        ResolutionInfo info = imageCapture.getResolutionInfo();
-        if (info == null) { return thumbnailUri; }
-
-        size = info.getResolution();
-        if (this.targetSize > 0 && targetResolution != null) {
-            size = this.targetResolution;
-        }
-
-        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.Q) {
-            try {
-                bitmap = ThumbnailUtils.createVideoThumbnail(videoFile, size, null);
-            } catch (IOException e) {
-                bitmap = generateColoredBitmap(new Size(500, 500), Color.DKGRAY);
-            }
-        } else {
-            bitmap = generateColoredBitmap(new Size(500, 500), Color.DKGRAY);
-        }
-
-        try (FileOutputStream out = new FileOutputStream(thumbnail)) {
-            bitmap.compress(Bitmap.CompressFormat.JPEG, 80, out);
-            out.flush();
-        } catch (Exception e) {
-            return thumbnailUri;
-        }
-
-        thumbnailUri = Uri.fromFile(thumbnail).toString();
-        return thumbnailUri;
-    }
-
-
-    public Bitmap generateColoredBitmap(Size size, int color) {
-        Bitmap bitmap = Bitmap.createBitmap(size.getWidth(), size.getHeight(), Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(bitmap);
-        canvas.drawColor(color);
-
-        return bitmap;
-    }
-
-
-    public void takePicture(boolean useFlash, CameraCallback takePictureCallback) {
-        if (torchActivated) {
-            useFlash = true;
-        } else {
-            camera.getCameraControl().enableTorch(useFlash);
+    public void takePicture(String flashMode, CameraCallback takePictureCallback) {
+        if (SESSION_MODE_VIDEO.equals(config.getSessionMode())) {
+            takePictureCallback.onCompleted(new Exception("Unable to take picture in video session mode"), null, null);
+            return;
         }
 
+        long shutterAt = SystemClock.elapsedRealtime();
         UUID uuid = UUID.randomUUID();
 
         File imgFile = new File(
@@ -469,26 +339,29 @@ public class CameraPreviewFragment extends Fragment {
                 uuid.toString() + ".jpg"
         );
 
-        if (imageCapture == null) {
-            imageCapture = new ImageCapture.Builder()
-                    .setCaptureMode(ImageCapture.CAPTURE_MODE_MAXIMIZE_QUALITY)
-                    .setTargetRotation(getActivity().getWindowManager().getDefaultDisplay().getRotation())
-                    .build();
+        String effectiveFlashMode = prepareImageCapture(flashMode);
+        if (config.isSinglePassExif()) {
+            takePictureInMemory(imgFile, shutterAt, effectiveFlashMode, takePictureCallback);
+            return;
         }
 
-        ImageCapture.OutputFileOptions outputOptions = new ImageCapture.OutputFileOptions.Builder(imgFile).build();
+        // EXIF and file work run on the post-capture executor, only the final callback reaches Cordova
         imageCapture.takePicture(
-                outputOptions,
-                ContextCompat.getMainExecutor(getActivity().getApplicationContext()),
-                new ImageCapture.OnImageSavedCallback() {
-                    @Override
-                    public void onImageSaved(@NonNull ImageCapture.OutputFileResults outputFileResults) {
-                        if (camera.getCameraInfo().hasFlashUnit() && !torchActivated) {
-                            camera.getCameraControl().enableTorch(false);
-                        }
+                imgFile,
+                PostCaptureExecutor.getInstance(),
+                (Exception saveErr) -> {
+                    if (saveErr != null) {
+                        Log.e(TAG, "takePicture: " + saveErr.getMessage());
+                        takePictureCallback.onCompleted(new Exception("Unable to take picture"), null, null);
+                        return;
+                    }
+                    long trace = CameraTrace.begin("onImageSaved");
+                    try {
+                        long savedAt = SystemClock.elapsedRealtime();
+                        int orientation = ExifSplicer.ORIENTATION_UNDEFINED;
 
                         if (imgFile == null) {
-                            takePictureCallback.onCompleted(new Exception("Unable to save image"), null);
+                            takePictureCallback.onCompleted(new Exception("Unable to save image"), null, null);
                             return;
                         } else {
 
@@ -498,194 +371,765 @@ public class CameraPreviewFragment extends Fragment {
                             } catch (IOException e) {
                                 Log.e(TAG, "new ExifInterface err: " + e.getMessage());
                                 e.printStackTrace();
-                                takePictureCallback.onCompleted(new Exception("Unable to create exif object"), null);
+                                takePictureCallback.onCompleted(new Exception("Unable to create exif object"), null, null);
                                 return;
                             }
+                            orientation = exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifSplicer.ORIENTATION_UNDEFINED);
 
                             if (location != null) {
                                 exif.setGpsInfo(location);
                                 try {
-                                    exif.saveAttributes();
+                                    saveExifAttributes(exif);
                                 } catch (IOException e) {
                                     Log.e(TAG, "save exif err: " + e.getMessage());
                                     e.printStackTrace();
-                                    takePictureCallback.onCompleted(new Exception("Unable to save gps exif"), null);
+                                    takePictureCallback.onCompleted(new Exception("Unable to save gps exif"), null, null);
                                     return;
                                 }
                             }
                         }
 
-                        takePictureCallback.onCompleted(null, Uri.fromFile(imgFile).toString());
+                        long exifDoneAt = SystemClock.elapsedRealtime();
+                        JSONObject details = getCaptureDetails(shutterAt, savedAt, exifDoneAt, effectiveFlashMode);
+                        registerCapture(imgFile.getAbsolutePath(), CaptureStore.KIND_PHOTO);
+                        addRenditions(details, imgFile, orientation);
+                        recordCaptureCompleted(shutterAt, exifDoneAt);
+                        takePictureCallback.onCompleted(null, Uri.fromFile(imgFile).toString(), details);
+                    } finally {
+                        CameraTrace.end("onImageSaved", trace);
+                    }
+                }
+        );
+    }
+
+    /**
+     * Takes the picture with the help of the best-shot buffer enabled with the bestShot option. MODE_SHARPEST writes
+     * the sharpest recent analysis frame, MODE_STABLE fires ImageCapture at the stillest moment within windowMs.
+     * The selection report is added to the details as bestShot.
+     */
+    public void takeBestShot(String mode, String flashMode, int windowMs, CameraCallback takePictureCallback) {
+        if (bestShotSelector == null) {
+            takePictureCallback.onCompleted(new Exception("Best shot is not enabled, pass bestShot in the enable options"), null, null);
+            return;
+        }
+
+        if (BestShotSelector.MODE_SHARPEST.equals(mode)) {
+            File imgFile = new File(getActivity().getBaseContext().getFilesDir(), UUID.randomUUID().toString() + ".jpg");
+            bestShotSelector.selectSharpest(imgFile, (Exception err, String nativePath, JSONObject report) -> {
+                JSONObject details = new JSONObject();
+                if (err == null) {
+                    registerCapture(imgFile.getAbsolutePath(), CaptureStore.KIND_PHOTO);
+                    try {
+                        details.put("bestShot", report);
+                    } catch (JSONException e) {
+                        e.printStackTrace();
+                    }
+                }
+                takePictureCallback.onCompleted(err, nativePath, details);
+            });
+            return;
+        }
+
+        Handler handler = new Handler(Looper.getMainLooper());
+        bestShotSelector.awaitStable(windowMs, (Exception err, String nativePath, JSONObject report) -> handler.post(() -> {
+            if (!isAdded()) {
+                takePictureCallback.onCompleted(new Exception("Camera is closed"), null, null);
+                return;
+            }
+            if (err != null) {
+                takePictureCallback.onCompleted(err, null, null);
+                return;
+            }
+            takePicture(flashMode, (Exception captureErr, String capturedPath, JSONObject details) -> {
+                if (captureErr == null && details != null) {
+                    try {
+                        details.put("bestShot", report);
+                    } catch (JSONException e) {
+                        e.printStackTrace();
+                    }
+                }
+                takePictureCallback.onCompleted(captureErr, capturedPath, details);
+            });
+        }));
+    }
+
+    /**
+     * Captures to memory and hands the JPEG bytes, or a downscaled rendition of maxEdge pixels when maxEdge is
+     * positive, to the callback without writing a file. Images larger than maxBytes are written to a file instead
+     * and only their path is returned.
+     */
+    public void takePictureBytes(String flashMode, int maxBytes, int maxEdge, CaptureBytesCallback captureBytesCallback) {
+        if (SESSION_MODE_VIDEO.equals(config.getSessionMode())) {
+            captureBytesCallback.onCompleted(new Exception("Unable to take picture in video session mode"), null, null, null);
+            return;
+        }
+
+        long shutterAt = SystemClock.elapsedRealtime();
+        File imgFile = new File(getActivity().getBaseContext().getFilesDir(), UUID.randomUUID().toString() + ".jpg");
+        String effectiveFlashMode = prepareImageCapture(flashMode);
+        imageCapture.takePicture(
+                PostCaptureExecutor.getInstance(),
+                (Exception captureErr, CameraBackend.CapturedImage image) -> {
+                    if (captureErr != null) {
+                        Log.e(TAG, "takePicture: " + captureErr.getMessage());
+                        captureBytesCallback.onCompleted(new Exception("Unable to take picture"), null, null, null);
+                        return;
+                    }
+                    long capturedAt = SystemClock.elapsedRealtime();
+                    byte[] jpeg = null;
+                    try {
+                        jpeg = maxEdge > 0 ? encodeRendition(image, maxEdge) : encodeJpeg(image, maxBytes);
+                        if (jpeg == null || jpeg.length > maxBytes) {
+                            jpeg = null;
+                            writeJpeg(image, imgFile);
+                        }
+                    } catch (IOException e) {
+                        Log.e(TAG, "encode jpeg err: " + e.getMessage());
+                        e.printStackTrace();
+                        imgFile.delete();
+                        captureBytesCallback.onCompleted(new Exception("Unable to save image"), null, null, null);
+                        return;
+                    } finally {
+                        image.close();
+                    }
+
+                    long savedAt = SystemClock.elapsedRealtime();
+                    JSONObject details = getCaptureDetails(shutterAt, capturedAt, savedAt, effectiveFlashMode);
+                    try {
+                        details.put("output", jpeg != null ? "bytes" : "file");
+                        details.put("bytes", jpeg != null ? jpeg.length : imgFile.length());
+                    } catch (JSONException e) {
+                        e.printStackTrace();
+                    }
+                    recordCaptureCompleted(shutterAt, savedAt);
+                    if (jpeg != null) {
+                        captureBytesCallback.onCompleted(null, jpeg, null, details);
+                    } else {
+                        registerCapture(imgFile.getAbsolutePath(), CaptureStore.KIND_PHOTO);
+                        captureBytesCallback.onCompleted(null, null, Uri.fromFile(imgFile).toString(), details);
                     }
+                }
+        );
+    }
 
-                    @Override
-                    public void onError(@NonNull ImageCaptureException exception) {
-                        Log.e(TAG, "takePicture: " + exception.getMessage());
-                        takePictureCallback.onCompleted(new Exception("Unable to take picture"), null);
+    /**
+     * Returns the flash mode in effect for the next capture.
+     */
+    private String prepareImageCapture(String flashMode) {
+        if (imageCapture == null) {
+            imageCapture = cameraBackend.createImageCapture(config.getAspectRatio(), targetResolution, CAPTURE_MODE_QUALITY);
+        }
+
+        // The flash fires through ImageCapture with AE precapture; the torch is left to torchSwitch.
+        // While the torch is on the scene is already lit, so the flash stays off.
+        String effectiveFlashMode = torchActivated ? FLASH_MODE_OFF : flashMode;
+        imageCapture.setFlashMode(effectiveFlashMode);
+        return effectiveFlashMode;
+    }
+
+    /**
+     * Keeps the encoded JPEG in memory and writes it once with the orientation and GPS tags already in its Exif segment.
+     */
+    private void takePictureInMemory(File imgFile, long shutterAt, String flashMode, CameraCallback takePictureCallback) {
+        imageCapture.takePicture(
+                PostCaptureExecutor.getInstance(),
+                (Exception captureErr, CameraBackend.CapturedImage image) -> {
+                    if (captureErr != null) {
+                        Log.e(TAG, "takePicture: " + captureErr.getMessage());
+                        takePictureCallback.onCompleted(new Exception("Unable to take picture"), null, null);
+                        return;
                     }
+                    long capturedAt = SystemClock.elapsedRealtime();
+                    int orientation = ExifSplicer.orientationFromRotation(image.getRotationDegrees());
+
+                    try {
+                        writeJpeg(image, imgFile);
+                    } catch (IOException e) {
+                        Log.e(TAG, "write jpeg err: " + e.getMessage());
+                        e.printStackTrace();
+                        imgFile.delete();
+                        takePictureCallback.onCompleted(new Exception("Unable to save image"), null, null);
+                        return;
+                    } finally {
+                        image.close();
+                    }
+
+                    long savedAt = SystemClock.elapsedRealtime();
+                    JSONObject details = getCaptureDetails(shutterAt, capturedAt, savedAt, flashMode);
+                    registerCapture(imgFile.getAbsolutePath(), CaptureStore.KIND_PHOTO);
+                    addRenditions(details, imgFile, orientation);
+                    recordCaptureCompleted(shutterAt, savedAt);
+                    takePictureCallback.onCompleted(null, Uri.fromFile(imgFile).toString(), details);
                 }
         );
     }
 
+    private void writeJpeg(CameraBackend.CapturedImage image, File imgFile) throws IOException {
+        ByteBuffer buffer = image.getJpeg();
+        int orientation = ExifSplicer.orientationFromRotation(image.getRotationDegrees());
+        Location captureLocation = location;
+        ExifSplicer.GpsInfo gps = getGpsInfo(captureLocation);
+
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(imgFile), JPEG_WRITE_BUFFER_SIZE)) {
+            ExifSplicer.splice(buffer, orientation, gps, out);
+            return;
+        } catch (IOException e) {
+            Log.w(TAG, "Single pass exif failed, falling back to ExifInterface: " + e.getMessage());
+        }
+
+        try (FileOutputStream out = new FileOutputStream(imgFile)) {
+            out.getChannel().write(buffer.duplicate());
+        }
+        ExifInterface exif = new ExifInterface(imgFile.getAbsolutePath());
+        exif.setAttribute(ExifInterface.TAG_ORIENTATION, String.valueOf(orientation));
+        if (captureLocation != null) {
+            exif.setGpsInfo(captureLocation);
+        }
+        saveExifAttributes(exif);
+    }
+
+    /**
+     * Returns the JPEG with its Exif updated, or null when it is larger than maxBytes or its Exif cannot be spliced,
+     * in which case it goes through writeJpeg.
+     */
+    private byte[] encodeJpeg(CameraBackend.CapturedImage image, int maxBytes) throws IOException {
+        ByteBuffer buffer = image.getJpeg().duplicate();
+        if (buffer.remaining() > maxBytes) {
+            return null;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(buffer.remaining() + EXIF_HEADROOM_BYTES);
+        try {
+            ExifSplicer.splice(buffer, ExifSplicer.orientationFromRotation(image.getRotationDegrees()), getGpsInfo(location), out);
+        } catch (IOException e) {
+            Log.w(TAG, "Single pass exif failed, falling back to a file: " + e.getMessage());
+            return null;
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes the JPEG subsampled to the nearest power of two above maxEdge, scales it down to maxEdge on its
+     * longest side and re-encodes it with the orientation and GPS tags of the original.
+     */
+    private byte[] encodeRendition(CameraBackend.CapturedImage image, int maxEdge) throws IOException {
+        ByteBuffer buffer = image.getJpeg().duplicate();
+        byte[] encoded = new byte[buffer.remaining()];
+        buffer.get(encoded);
+
+        int longestEdge = Math.max(image.getWidth(), image.getHeight());
+        BitmapFactory.Options decodeOptions = new BitmapFactory.Options();
+        decodeOptions.inSampleSize = 1;
+        while (longestEdge / (decodeOptions.inSampleSize * 2) >= maxEdge) {
+            decodeOptions.inSampleSize *= 2;
+        }
+        Bitmap decoded = BitmapFactory.decodeByteArray(encoded, 0, encoded.length, decodeOptions);
+        if (decoded == null) {
+            throw new IOException("Unable to decode image");
+        }
+
+        Bitmap rendition = decoded;
+        float scale = (float) maxEdge / Math.max(decoded.getWidth(), decoded.getHeight());
+        if (scale < 1) {
+            rendition = Bitmap.createScaledBitmap(decoded, Math.round(decoded.getWidth() * scale), Math.round(decoded.getHeight() * scale), true);
+            decoded.recycle();
+        }
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        rendition.compress(Bitmap.CompressFormat.JPEG, RENDITION_JPEG_QUALITY, compressed);
+        rendition.recycle();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(compressed.size() + EXIF_HEADROOM_BYTES);
+        ExifSplicer.splice(ByteBuffer.wrap(compressed.toByteArray()), ExifSplicer.orientationFromRotation(image.getRotationDegrees()), getGpsInfo(location), out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes the renditions configured with enable and adds their paths to the capture details. A rendition
+     * failure leaves the captured image in place and reports an empty set.
+     */
+    private void addRenditions(JSONObject details, File imgFile, int orientation) {
+        RenditionGenerator renditionGenerator = config.getRenditions();
+        if (renditionGenerator == null) {
+            return;
+        }
+
+        long startedAt = SystemClock.elapsedRealtime();
+        JSONObject renditions;
+        try {
+            renditions = renditionGenerator.generate(imgFile, orientation);
+            Iterator<String> names = renditions.keys();
+            while (names.hasNext()) {
+                registerCapture(renditions.optString(names.next()), CaptureStore.KIND_RENDITION);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "renditions err: " + e.getMessage());
+            renditions = new JSONObject();
+        }
+        try {
+            details.put("renditions", renditions);
+            details.put("renditionMs", SystemClock.elapsedRealtime() - startedAt);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void registerCapture(String nativePath, String kind) {
+        if (captureStore != null) {
+            captureStore.register(nativePath, kind);
+        }
+    }
+
+    private static ExifSplicer.GpsInfo getGpsInfo(Location captureLocation) {
+        if (captureLocation == null) {
+            return null;
+        }
+        return new ExifSplicer.GpsInfo(
+                captureLocation.getLatitude(),
+                captureLocation.getLongitude(),
+                captureLocation.hasAltitude() ? captureLocation.getAltitude() : Double.NaN,
+                captureLocation.hasSpeed() ? captureLocation.getSpeed() : Double.NaN,
+                captureLocation.getTime()
+        );
+    }
+
+    private JSONObject getCaptureDetails(long shutterAt, long capturedAt, long savedAt, String flashMode) {
+        CameraMetrics.record(CameraMetrics.Stage.TAKE_PICTURE_CAPTURE, capturedAt - shutterAt);
+        CameraMetrics.record(CameraMetrics.Stage.TAKE_PICTURE_EXIF, savedAt - capturedAt);
+        JSONObject details = new JSONObject();
+        try {
+            details.put("captureMs", capturedAt - shutterAt);
+            details.put("exifMs", savedAt - capturedAt);
+            details.put("totalMs", savedAt - shutterAt);
+            details.put("captureMode", getEffectiveCaptureMode());
+            details.put("flashMode", flashMode);
+            details.put("postCaptureQueueDepth", PostCaptureExecutor.getInstance().getQueueDepth());
+            details.put("peakPostCaptureQueueDepth", PostCaptureExecutor.getInstance().getPeakQueueDepth());
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        return details;
+    }
+
+    private static void recordCaptureCompleted(long shutterAt, long savedAt) {
+        long completedAt = SystemClock.elapsedRealtime();
+        CameraMetrics.record(CameraMetrics.Stage.TAKE_PICTURE_CALLBACK, completedAt - savedAt);
+        CameraMetrics.record(CameraMetrics.Stage.TAKE_PICTURE_TOTAL, completedAt - shutterAt);
+    }
+
     public void setLocation(Location loc) {
         if (loc != null) {
             this.location = loc;
         }
     }
 
-    public void switchCameraTo(JSONObject options, CameraSwitchedCallback cameraSwitchedCallback) {
-        ListenableFuture<ProcessCameraProvider> cameraProviderFuture = ProcessCameraProvider.getInstance(getActivity());
-        cameraProviderFuture.addListener(() -> {
-            ProcessCameraProvider cameraProvider = null;
+    public void switchCameraTo(CameraSessionConfig switchConfig, boolean reportTimings, CameraSwitchedCallback cameraSwitchedCallback) {
+        long switchStartedAt = SystemClock.elapsedRealtime();
+        cameraBackend.getProvider(switchConfig.getDirection(), (Exception err, CameraBackend.Provider cameraProvider) -> {
+            if (err != null) {
+                cameraSwitchedCallback.onSwitch(false, null);
+                return;
+            }
+            List<String> reboundUseCases;
             try {
-                cameraProvider = cameraProviderFuture.get();
-            } catch (ExecutionException | InterruptedException e) {
-                Log.e(TAG, "Error occurred while trying to obtain the camera provider: " + e.getMessage());
-                e.printStackTrace();
-                cameraSwitchedCallback.onSwitch(false);
+                reboundUseCases = setUpCamera(switchConfig, cameraProvider);
+            } catch (IllegalArgumentException e) {
+                Log.e(TAG, "switchCameraTo: " + e.getMessage());
+                cameraSwitchedCallback.onSwitch(false, reportTimings ? switchFailure(e) : null);
                 return;
             }
-            setUpCamera(options, cameraProvider);
-            preview.setSurfaceProvider(viewFinder.getSurfaceProvider());
-            cameraSwitchedCallback.onSwitch(true);
-           
-        }, ContextCompat.getMainExecutor(getActivity()));
-    }
-
-    @NonNull
-    @SuppressLint("RestrictedApi")
-    private static List<Camera2CameraInfoImpl> getCamera2CameraInfos(List<CameraInfo> cameraInfos) {
-        List<Camera2CameraInfoImpl> backCameras = new ArrayList<>();
-        for (CameraInfo cameraInfo : cameraInfos) {
-            if (cameraInfo instanceof Camera2CameraInfoImpl) {
-                Camera2CameraInfoImpl camera2CameraInfo = (Camera2CameraInfoImpl) cameraInfo;
-                if (camera2CameraInfo.getLensFacing() == CameraSelector.LENS_FACING_BACK) {
-                    backCameras.add(camera2CameraInfo);
+            long bindMs = SystemClock.elapsedRealtime() - switchStartedAt;
+            CameraMetrics.record(CameraMetrics.Stage.SWITCH_CAMERA_BIND, bindMs);
+            if (!reportTimings) {
+                cameraSwitchedCallback.onSwitch(true, null);
+            }
+
+            if (!reboundUseCases.contains("preview")) {
+                // The preview kept streaming, so there is no first frame to wait for
+                if (reportTimings) {
+                    cameraSwitchedCallback.onSwitch(true, switchDetails(reboundUseCases, bindMs));
                 }
+                return;
             }
+
+            observeFirstFrame(switchStartedAt, true, (long firstFrameMs) -> {
+                CameraMetrics.record(CameraMetrics.Stage.SWITCH_CAMERA_FIRST_FRAME, firstFrameMs);
+                if (!reportTimings) {
+                    return;
+                }
+                JSONObject details = switchDetails(reboundUseCases, bindMs);
+                try {
+                    details.put("firstFrameMs", firstFrameMs);
+                } catch (JSONException e) {
+                    e.printStackTrace();
+                }
+                cameraSwitchedCallback.onSwitch(true, details);
+            });
+        });
+    }
+
+    private static JSONObject switchFailure(Exception err) {
+        JSONObject details = new JSONObject();
+        try {
+            details.put("switched", false);
+            details.put("error", err.getMessage());
+        } catch (JSONException e) {
+            e.printStackTrace();
         }
-        return backCameras;
+        return details;
     }
 
-    @SuppressLint("RestrictedApi")
-    private void setCameraSelector() {
-        if (lens.equals("wide") && direction != CameraSelector.LENS_FACING_FRONT) {
-            cameraSelector = new CameraSelector.Builder()
-                    .addCameraFilter(cameraInfos -> {
-                        List<Camera2CameraInfoImpl> backCameras = getCamera2CameraInfos(cameraInfos);
+    private JSONObject switchDetails(List<String> reboundUseCases, long bindMs) {
+        JSONObject details = new JSONObject();
+        try {
+            details.put("switched", true);
+            details.put("rebound", new JSONArray(reboundUseCases));
+            details.put("bindMs", bindMs);
+            details.put("captureMode", getEffectiveCaptureMode());
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        return details;
+    }
 
-                        Camera2CameraInfoImpl selectedCamera = Collections.min(backCameras, (o1, o2) -> {
-                            float focalLength1 = Objects.requireNonNull(o1.getCameraCharacteristicsCompat().get(CameraCharacteristics.LENS_INFO_AVAILABLE_FOCAL_LENGTHS))[0];
-                            float focalLength2 = Objects.requireNonNull(o2.getCameraCharacteristicsCompat().get(CameraCharacteristics.LENS_INFO_AVAILABLE_FOCAL_LENGTHS))[0];
-                            return Float.compare(focalLength1, focalLength2);
-                        });
+    /**
+     * Applies the config to the camera session, only rebuilding and rebinding the use cases whose parameters changed.
+     * Returns the names of the rebound parts of the session. Throws an IllegalArgumentException when the camera
+     * cannot stream the new use cases, the session then keeps its previous use cases.
+     */
+    public List<String> setUpCamera(CameraSessionConfig sessionConfig, CameraBackend.Provider cameraProvider) {
+        long trace = CameraTrace.begin("setUpCamera");
+        try {
+            return applyCameraOptions(sessionConfig, cameraProvider);
+        } finally {
+            CameraTrace.end("setUpCamera", trace);
+        }
+    }
 
-                        if (selectedCamera != null) {
-                            return Collections.singletonList(selectedCamera);
-                        } else {
-                            return cameraInfos;
-                        }
-                    })
-                    .build();
+    private List<String> applyCameraOptions(CameraSessionConfig sessionConfig, CameraBackend.Provider cameraProvider) {
+        EnumSet<CameraSessionConfig.Change> changes = sessionConfig.diff(boundConfig);
+        CameraSessionConfig previousConfig = config;
+        CameraBackend.PhotoCapture previousImageCapture = imageCapture;
+        CameraBackend.VideoRecorder previousVideoCapture = videoCapture;
+        CameraBackend.UseCaseHandle previousImageAnalysis = imageAnalysis;
+        Size previousTargetResolution = targetResolution;
+        String previousImageCaptureMode = imageCaptureMode;
+        config = sessionConfig;
+        double aspectRatio = sessionConfig.getAspectRatio();
+        String sessionMode = sessionConfig.getSessionMode();
+
+        // In photo mode VideoCapture is only bound while a recording needs it
+        boolean wantsImageCapture = !SESSION_MODE_VIDEO.equals(sessionMode);
+        boolean wantsVideoCapture = !SESSION_MODE_PHOTO.equals(sessionMode) || videoCaptureRequested;
+        boolean wantsImageAnalysis = frameAnalyzer.hasConsumers();
+
+        boolean cameraChanged = camera == null
+                || cameraProvider != boundCameraProvider
+                || changes.contains(CameraSessionConfig.Change.CAMERA);
+        Size resolution = cameraChanged || !Collections.disjoint(changes, RESOLUTION_CHANGES)
+                ? calculateResolution(getContext(), sessionConfig.getDirection(), sessionConfig.getTargetSize(), aspectRatio, sessionConfig.getResolutionPolicy())
+                : targetResolution;
+        String resolvedCaptureMode = cameraChanged || imageCaptureMode == null || changes.contains(CameraSessionConfig.Change.CAPTURE_MODE)
+                ? resolveCaptureMode(cameraProvider)
+                : imageCaptureMode;
+        boolean aspectRatioChanged = changes.contains(CameraSessionConfig.Change.ASPECT_RATIO);
+        boolean imageCaptureChanged = wantsImageCapture
+                && (imageCapture == null
+                    || aspectRatioChanged
+                    || !Objects.equals(resolution, targetResolution)
+                    || !resolvedCaptureMode.equals(imageCaptureMode));
+        imageCaptureMode = resolvedCaptureMode;
+        boolean videoCaptureChanged = wantsVideoCapture && (videoCapture == null || aspectRatioChanged);
+        boolean imageAnalysisChanged = wantsImageAnalysis
+                && (imageAnalysis == null || aspectRatioChanged || analysisTargetWidth != boundAnalysisTargetWidth);
+        targetResolution = resolution;
+
+        List<CameraBackend.UseCaseHandle> staleUseCases = new ArrayList<>();
+        List<CameraBackend.UseCaseHandle> changedUseCases = new ArrayList<>();
+        List<String> reboundUseCases = new ArrayList<>();
+        if (preview == null) {
+            preview = cameraBackend.createPreview();
+            changedUseCases.add(preview);
+        }
+        if (imageCaptureChanged) {
+            if (imageCapture != null) {
+                staleUseCases.add(imageCapture);
+            }
+            imageCapture = cameraBackend.createImageCapture(aspectRatio, targetResolution, imageCaptureMode);
+            changedUseCases.add(imageCapture);
+            reboundUseCases.add("imageCapture");
+        }
+        if (videoCaptureChanged) {
+            if (videoCapture != null) {
+                staleUseCases.add(videoCapture);
+            }
+            videoCapture = cameraBackend.createVideoCapture(aspectRatio);
+            changedUseCases.add(videoCapture);
+            reboundUseCases.add("videoCapture");
+        }
+        if (imageAnalysisChanged) {
+            if (imageAnalysis != null) {
+                staleUseCases.add(imageAnalysis);
+            }
+            imageAnalysis = cameraBackend.createImageAnalysis(aspectRatio, analysisTargetWidth, frameAnalyzer);
+            changedUseCases.add(imageAnalysis);
+            reboundUseCases.add("imageAnalysis");
+        }
+        if (!wantsImageCapture && imageCapture != null) {
+            staleUseCases.add(imageCapture);
+            imageCapture = null;
+            reboundUseCases.add("imageCapture");
+        }
+        if (!wantsVideoCapture && videoCapture != null) {
+            staleUseCases.add(videoCapture);
+            videoCapture = null;
+            reboundUseCases.add("videoCapture");
+        }
+        if (!wantsImageAnalysis && imageAnalysis != null) {
+            staleUseCases.add(imageAnalysis);
+            imageAnalysis = null;
+            reboundUseCases.add("imageAnalysis");
+        }
+
+        if (cameraChanged) {
+            // A lifecycle can only be bound to one camera, so every use case moves to the new one.
+            // The Preview instance is kept so its surface stays attached to the PreviewView.
+            cameraProvider.unbindAll();
+            reboundUseCases.clear();
+            reboundUseCases.add("camera");
+            reboundUseCases.add("preview");
+            try {
+                camera = bindToLifecycle(cameraProvider, getBoundUseCases(reboundUseCases));
+            } catch (IllegalArgumentException e) {
+                e.printStackTrace();
+                if (imageCapture != null) {
+                    imageCapture = cameraBackend.createImageCapture(aspectRatio, targetResolution, imageCaptureMode);
+                }
+                camera = bindToLifecycle(cameraProvider, getBoundUseCases(new ArrayList<>()));
+            }
         } else {
-            cameraSelector = new CameraSelector.Builder()
-                    .requireLensFacing(direction)
-                    .build();
+            if (!staleUseCases.isEmpty()) {
+                cameraProvider.unbind(staleUseCases.toArray(new CameraBackend.UseCaseHandle[0]));
+            }
+            try {
+                if (!changedUseCases.isEmpty()) {
+                    camera = bindToLifecycle(cameraProvider, changedUseCases.toArray(new CameraBackend.UseCaseHandle[0]));
+                }
+            } catch (IllegalArgumentException e) {
+                // Nothing of the new set was bound, so the session goes back to the use cases it had
+                config = previousConfig;
+                imageCapture = previousImageCapture;
+                videoCapture = previousVideoCapture;
+                imageAnalysis = previousImageAnalysis;
+                targetResolution = previousTargetResolution;
+                imageCaptureMode = previousImageCaptureMode;
+                analysisTargetWidth = boundAnalysisTargetWidth;
+                if (!staleUseCases.isEmpty()) {
+                    camera = bindToLifecycle(cameraProvider, staleUseCases.toArray(new CameraBackend.UseCaseHandle[0]));
+                }
+                throw e;
+            }
         }
-    }
 
-    @SuppressLint("RestrictedApi")
-    public void setUpCamera(JSONObject options, ProcessCameraProvider cameraProvider){
-        int directionOption;
-        String lensOption;
-        double aspectRatioOption;
+        boundCameraProvider = cameraProvider;
+        boundConfig = sessionConfig;
+        boundAnalysisTargetWidth = analysisTargetWidth;
+        return reboundUseCases;
+    }
 
+    private CameraBackend.BoundCamera bindToLifecycle(CameraBackend.Provider cameraProvider, CameraBackend.UseCaseHandle[] useCases) {
+        long trace = CameraTrace.begin("bindToLifecycle");
         try {
-            directionOption = options.getInt("direction");
-        } catch (JSONException e) {
-            directionOption = CameraSelector.LENS_FACING_BACK;
+            return cameraProvider.bind(config.getDirection(), config.getLens(), useCases);
+        } finally {
+            CameraTrace.end("bindToLifecycle", trace);
         }
+    }
+
+    private static void saveExifAttributes(ExifInterface exif) throws IOException {
+        long trace = CameraTrace.begin("ExifInterface.saveAttributes");
         try {
-            lensOption = options.getString("lens");
-        } catch (JSONException e) {
-            lensOption = "default";
+            exif.saveAttributes();
+        } finally {
+            CameraTrace.end("ExifInterface.saveAttributes", trace);
         }
-        try {
-            aspectRatioOption = options.getDouble("aspectRatio");
-        } catch (JSONException e) {
-            aspectRatioOption = ASPECT_RATIO_3_BY_4;
+    }
+
+    private CameraBackend.UseCaseHandle[] getBoundUseCases(List<String> useCaseNames) {
+        List<CameraBackend.UseCaseHandle> useCases = new ArrayList<>();
+        useCases.add(preview);
+        if (imageCapture != null) {
+            useCases.add(imageCapture);
+            useCaseNames.add("imageCapture");
+        }
+        if (videoCapture != null) {
+            useCases.add(videoCapture);
+            useCaseNames.add("videoCapture");
+        }
+        if (imageAnalysis != null) {
+            useCases.add(imageAnalysis);
+            useCaseNames.add("imageAnalysis");
+        }
+        return useCases.toArray(new CameraBackend.UseCaseHandle[0]);
+    }
+
+    /**
+     * Binds VideoCapture on demand when the session mode does not keep it bound.
+     */
+    private void ensureVideoCaptureBound(CameraStartedCallback videoCaptureBoundCallback) {
+        videoIdleHandler.removeCallbacksAndMessages(null);
+        if (videoCapture != null) {
+            videoCaptureBoundCallback.onCameraStarted(null);
+            return;
+        }
+
+        videoCaptureRequested = true;
+        cameraBackend.getProvider(config.getDirection(), (Exception err, CameraBackend.Provider cameraProvider) -> {
+            if (err != null) {
+                videoCaptureBoundCallback.onCameraStarted(new Exception("Unable to bind video capture"));
+                return;
+            }
+            try {
+                setUpCamera(config, cameraProvider);
+            } catch (IllegalArgumentException e) {
+                // setUpCamera put the previous use cases back, so videoCapture is null again
+                Log.e(TAG, "ensureVideoCaptureBound: " + e.getMessage());
+                videoCaptureRequested = false;
+                videoCaptureBoundCallback.onCameraStarted(new Exception("Unable to bind video capture: " + e.getMessage()));
+                return;
+            }
+            videoCaptureBoundCallback.onCameraStarted(null);
+        });
+    }
+
+    /**
+     * Registers a consumer of analysis frames, binding ImageAnalysis at about targetWidth pixels wide if it is not
+     * bound yet. ImageAnalysis stays bound while any consumer is registered.
+     */
+    public void addFrameConsumer(FrameConsumer consumer, int targetWidth, CameraStartedCallback analysisBoundCallback) {
+        frameAnalyzer.addConsumer(consumer);
+        if (imageAnalysis != null && targetWidth <= analysisTargetWidth) {
+            analysisBoundCallback.onCameraStarted(null);
+            return;
         }
 
-        if (directionOption != direction) {
-            direction = directionOption;
+        analysisTargetWidth = Math.max(targetWidth, imageAnalysis != null ? analysisTargetWidth : 0);
+        cameraBackend.getProvider(config.getDirection(), (Exception err, CameraBackend.Provider cameraProvider) -> {
+            if (err != null) {
+                frameAnalyzer.removeConsumer(consumer);
+                analysisBoundCallback.onCameraStarted(new Exception("Unable to bind image analysis"));
+                return;
+            }
+            try {
+                setUpCamera(config, cameraProvider);
+            } catch (IllegalArgumentException e) {
+                Log.e(TAG, "addFrameConsumer: " + e.getMessage());
+                frameAnalyzer.removeConsumer(consumer);
+                analysisBoundCallback.onCameraStarted(new Exception("Unable to bind image analysis: " + e.getMessage()));
+                return;
+            }
+            analysisBoundCallback.onCameraStarted(null);
+        });
+    }
+
+    public void removeFrameConsumer(FrameConsumer consumer) {
+        frameAnalyzer.removeConsumer(consumer);
+        if (frameAnalyzer.hasConsumers() || imageAnalysis == null) {
+            return;
         }
-        if (!lensOption.equals(lens)) {
-            lens = lensOption;
+        cameraBackend.getProvider(config.getDirection(), (Exception err, CameraBackend.Provider cameraProvider) -> {
+            if (err == null && isAdded() && !frameAnalyzer.hasConsumers()) {
+                setUpCamera(config, cameraProvider);
+            }
+        });
+    }
+
+    private void scheduleVideoCaptureUnbind() {
+        if (!SESSION_MODE_PHOTO.equals(config.getSessionMode())) {
+            return;
         }
-        if (aspectRatioOption != aspectRatio) {
-            aspectRatio = aspectRatioOption;
+
+        videoIdleHandler.removeCallbacksAndMessages(null);
+        videoIdleHandler.postDelayed(() -> {
+            if (recording != null || !isAdded()) {
+                return;
+            }
+            videoCaptureRequested = false;
+            cameraBackend.getProvider(config.getDirection(), (Exception err, CameraBackend.Provider cameraProvider) -> {
+                if (err == null && isAdded() && recording == null && !videoCaptureRequested) {
+                    setUpCamera(config, cameraProvider);
+                }
+            });
+        }, config.getVideoIdleTimeoutMs());
+    }
+
+    /**
+     * Resolves the requested capture mode against the camera about to be bound, falling back from ZSL to latency
+     * when the camera cannot keep a zero shutter lag ring buffer.
+     */
+    private String resolveCaptureMode(CameraBackend.Provider cameraProvider) {
+        String captureMode = config.getCaptureMode();
+        if (CAPTURE_MODE_QUALITY.equals(captureMode)) {
+            return CAPTURE_MODE_QUALITY;
+        }
+        if (!CAPTURE_MODE_ZSL.equals(captureMode)) {
+            return CAPTURE_MODE_LATENCY;
         }
 
-        setCameraSelector();
-        targetResolution = calculateResolution(getContext(), targetSize, aspectRatio);
-        videoCapture = VideoCapture.withOutput(new Recorder.Builder()
-                .setQualitySelector(QualitySelector.from(calculateVideoCaptureRatio(aspectRatio)))
-                .build());
-        int cameraAspectRatio = calculateCameraAspect(aspectRatio);
-        preview = new Preview.Builder().build();
-        AspectRatioStrategy aspectRatioStrategy = new AspectRatioStrategy(
-                cameraAspectRatio,
-                AspectRatioStrategy.FALLBACK_RULE_AUTO
-        );
-        ResolutionStrategy resolutionStrategy = new ResolutionStrategy(
-                targetResolution,
-                ResolutionStrategy.FALLBACK_RULE_CLOSEST_HIGHER_THEN_LOWER
-        );
-        ResolutionSelector resolutionSelector = new ResolutionSelector.Builder()
-                .setAspectRatioStrategy(aspectRatioStrategy)
-                .setResolutionStrategy(resolutionStrategy)
-                .build();
-        imageCapture = new ImageCapture.Builder()
-                .setResolutionSelector(resolutionSelector)
-                .build();
-        cameraProvider.unbindAll();
         try {
-            camera = cameraProvider.bindToLifecycle(
-                    requireActivity(),
-                    cameraSelector,
-                    preview,
-                    imageCapture,
-                    videoCapture
-            );
+            if (cameraProvider.isZslSupported(config.getDirection(), config.getLens())) {
+                return CAPTURE_MODE_ZSL;
+            }
         } catch (IllegalArgumentException e) {
-            e.printStackTrace();
-            imageCapture = new ImageCapture.Builder()
-                    .setResolutionSelector(resolutionSelector)
-                    .build();
-            camera = cameraProvider.bindToLifecycle(
-                    requireActivity(),
-                    cameraSelector,
-                    preview,
-                    imageCapture,
-                    videoCapture
-            );
+            Log.e(TAG, "resolveCaptureMode: " + e.getMessage());
         }
+        Log.w(TAG, "Zero shutter lag is not supported by this camera, using latency capture mode");
+        return CAPTURE_MODE_LATENCY;
     }
 
-    public double getAspectRatio() {
-        return aspectRatio;
+    /**
+     * The capture mode actually in effect. CameraX turns zero shutter lag off while VideoCapture is bound.
+     */
+    public String getEffectiveCaptureMode() {
+        if (imageCapture == null) {
+            return null;
+        }
+        if (CAPTURE_MODE_ZSL.equals(imageCaptureMode) && videoCapture != null) {
+            return CAPTURE_MODE_LATENCY;
+        }
+        return imageCaptureMode;
     }
 
-    private int calculateCameraAspect(double aspectRatio) {
-        return Math.abs(aspectRatio - (ASPECT_RATIO_3_BY_4)) <= Math.abs(aspectRatio - (ASPECT_RATIO_9_BY_16))
-            ? AspectRatio.RATIO_4_3
-            : AspectRatio.RATIO_16_9;
+    /**
+     * Reports how long after startedAt the preview streams. When the preview was rebound it first has to go
+     * through IDLE, so a STREAMING state replayed from before the rebind is not taken for the first frame.
+     */
+    private void observeFirstFrame(long startedAt, boolean previewRebound, FirstFrameCallback firstFrameCallback) {
+        final Handler handler = new Handler(Looper.getMainLooper());
+        Observer<PreviewView.StreamState> observer = new Observer<PreviewView.StreamState>() {
+            private boolean restarted = !previewRebound;
+
+            @Override
+            public void onChanged(PreviewView.StreamState streamState) {
+                if (streamState != PreviewView.StreamState.STREAMING) {
+                    restarted = true;
+                    return;
+                }
+                if (restarted) {
+                    handler.removeCallbacksAndMessages(null);
+                    cameraBackend.getPreviewStreamState().removeObserver(this);
+                    firstFrameCallback.onFirstFrame(SystemClock.elapsedRealtime() - startedAt);
+                }
+            }
+        };
+        handler.postDelayed(() -> {
+            cameraBackend.getPreviewStreamState().removeObserver(observer);
+            firstFrameCallback.onFirstFrame(-1);
+        }, FIRST_FRAME_TIMEOUT_MS);
+        cameraBackend.getPreviewStreamState().observe(getViewLifecycleOwner(), observer);
     }
 
-    private Quality calculateVideoCaptureRatio(double aspectRatio) {
-        return Math.abs(aspectRatio - (ASPECT_RATIO_3_BY_4)) <= Math.abs(aspectRatio - (ASPECT_RATIO_9_BY_16))
-            ? Quality.LOWEST
-            : Quality.HD;
+    public CameraSessionConfig getSessionConfig() {
+        return config;
     }
 
     @Override
@@ -0,0 +1,155 @@
+package com.spoon.simplecamerapreview;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.camera.camera2.Camera2Config;
+import androidx.camera.core.CameraSelector;
+import androidx.camera.core.CameraXConfig;
+import androidx.camera.lifecycle.ProcessCameraProvider;
+import androidx.core.content.ContextCompat;
+import com.google.common.util.concurrent.ListenableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+interface CameraProviderCallback {
+    void onProvider(Exception err, ProcessCameraProvider cameraProvider);
+}
+
+/**
+ * Starts the CameraX provider initialization ahead of the first camera call and keeps the resolved provider
+ * so that enable and switchCameraTo do not wait on ProcessCameraProvider.getInstance().
+ * CameraX can only be configured before it first initializes, so the cameras it may open are fixed for the life
+ * of the process: all of them by default, or only those facing the direction given to limitToLensFacing().
+ */
+public class CameraProviderLoader {
+
+    public static final int ALL_LENS_FACINGS = -1;
+    private static final String TAG = "SimpleCameraPreview";
+    private static CameraProviderLoader instance;
+
+    private ListenableFuture<ProcessCameraProvider> cameraProviderFuture;
+    private ProcessCameraProvider cameraProvider;
+    private int lensFacingLimit = ALL_LENS_FACINGS;
+    private long initStartedAt;
+    private long initDurationMs = -1;
+
+    private CameraProviderLoader() {
+
+    }
+
+    public static synchronized CameraProviderLoader getInstance() {
+        if (instance == null) {
+            instance = new CameraProviderLoader();
+        }
+        return instance;
+    }
+
+    /**
+     * Limits CameraX to the cameras facing lensFacing, which shortens its initialization on devices with many
+     * cameras. Cameras facing the other way can then not be opened. Ignored once the initialization started.
+     */
+    public synchronized void limitToLensFacing(int lensFacing) {
+        if (cameraProviderFuture != null) {
+            Log.w(TAG, "limitToLensFacing: camera provider already initializing");
+            return;
+        }
+        lensFacingLimit = lensFacing;
+    }
+
+    public synchronized void prewarm(Context context) {
+        if (cameraProviderFuture != null) {
+            return;
+        }
+
+        Context applicationContext = context.getApplicationContext();
+        initStartedAt = SystemClock.elapsedRealtime();
+        try {
+            ProcessCameraProvider.configureInstance(buildConfig(lensFacingLimit));
+        } catch (IllegalStateException e) {
+            Log.w(TAG, "prewarm: camera provider already configured: " + e.getMessage());
+        }
+        trackInitialization(applicationContext, ProcessCameraProvider.getInstance(applicationContext));
+    }
+
+    /**
+     * Delivers a provider able to open a camera facing lensFacing on the main thread, starting the initialization
+     * when needed, or an error when CameraX is limited to the other direction.
+     */
+    public void get(Context context, int lensFacing, CameraProviderCallback callback) {
+        Executor mainExecutor = ContextCompat.getMainExecutor(context.getApplicationContext());
+        ListenableFuture<ProcessCameraProvider> future;
+        synchronized (this) {
+            if (!canOpen(lensFacing)) {
+                Exception err = new IllegalStateException("CameraX is limited to the "
+                        + (lensFacingLimit == CameraSelector.LENS_FACING_FRONT ? "front" : "back") + " camera");
+                mainExecutor.execute(() -> callback.onProvider(err, null));
+                return;
+            }
+            prewarm(context);
+            future = cameraProviderFuture;
+        }
+
+        future.addListener(() -> {
+            ProcessCameraProvider provider;
+            try {
+                provider = future.get();
+            } catch (ExecutionException | InterruptedException e) {
+                Log.e(TAG, "Error occurred while trying to obtain the camera provider: " + e.getMessage());
+                e.printStackTrace();
+                callback.onProvider(e, null);
+                return;
+            }
+            callback.onProvider(null, provider);
+        }, mainExecutor);
+    }
+
+    /**
+     * Whether a provider able to open a camera facing lensFacing is already initialized.
+     */
+    public synchronized boolean isReady(int lensFacing) {
+        return cameraProvider != null && canOpen(lensFacing);
+    }
+
+    public synchronized long getInitDurationMs() {
+        return initDurationMs;
+    }
+
+    private boolean canOpen(int lensFacing) {
+        return lensFacingLimit == ALL_LENS_FACINGS || lensFacingLimit == lensFacing;
+    }
+
+    private void trackInitialization(Context context, ListenableFuture<ProcessCameraProvider> future) {
+        cameraProvider = null;
+        cameraProviderFuture = future;
+        future.addListener(() -> {
+            try {
+                ProcessCameraProvider provider = future.get();
+                synchronized (this) {
+                    if (future == cameraProviderFuture) {
+                        cameraProvider = provider;
+                    }
+                    initDurationMs = SystemClock.elapsedRealtime() - initStartedAt;
+                    Log.d(TAG, "Camera provider ready in " + initDurationMs + "ms");
+                }
+            } catch (ExecutionException | InterruptedException e) {
+                Log.e(TAG, "prewarm: " + e.getMessage());
+                synchronized (this) {
+                    if (future == cameraProviderFuture) {
+                        cameraProviderFuture = null;
+                    }
+                }
+            }
+        }, ContextCompat.getMainExecutor(context));
+    }
+
+    private static CameraXConfig buildConfig(int lensFacingLimit) {
+        CameraXConfig.Builder builder = CameraXConfig.Builder.fromConfig(Camera2Config.defaultConfig());
+        if (lensFacingLimit != ALL_LENS_FACINGS) {
+            builder.setAvailableCamerasLimiter(new CameraSelector.Builder()
+                    .requireLensFacing(lensFacingLimit)
+                    .build());
+        }
+        return builder.build();
+    }
+}
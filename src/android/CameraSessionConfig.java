@@ -0,0 +1,244 @@
+package com.spoon.simplecamerapreview;
+
+import androidx.camera.core.CameraSelector;
+import org.json.JSONObject;
+import java.util.EnumSet;
+
+/**
+ * The camera session options of enable and switchCameraTo, parsed once per bridge call. Missing or invalid values
+ * fall back to their defaults without throwing, except for sessionMode, captureMode, videoIdleTimeoutMs and renditions. A config never changes: switchCameraTo derives
+ * the next one with withCameraOptions(), and diff() lists the options that differ between two configs so the session
+ * only reconfigures what they affect.
+ */
+public final class CameraSessionConfig {
+
+    public enum Change {
+        CAMERA,
+        ASPECT_RATIO,
+        TARGET_SIZE,
+        RESOLUTION_POLICY,
+        SESSION_MODE,
+        CAPTURE_MODE,
+        VIDEO_IDLE_TIMEOUT,
+        SINGLE_PASS_EXIF,
+        RENDITIONS,
+        BEST_SHOT
+    }
+
+    public static final int DEFAULT_VIDEO_IDLE_TIMEOUT_MS = 10000;
+    private static final int DEFAULT_BEST_SHOT_FRAMES = 8;
+    private static final int MIN_BEST_SHOT_FRAMES = 2;
+    private static final int MAX_BEST_SHOT_FRAMES = 30;
+    private static final int DEFAULT_BEST_SHOT_TARGET_WIDTH = 640;
+
+    public static final CameraSessionConfig DEFAULT = new CameraSessionConfig();
+
+    private final int direction;
+    private final String lens;
+    private final double aspectRatio;
+    private final int targetSize;
+    private final ResolutionPolicy resolutionPolicy;
+    private final String sessionMode;
+    private final String captureMode;
+    private final int videoIdleTimeoutMs;
+    private final boolean singlePassExif;
+    private final RenditionGenerator renditions;
+    private final int bestShotFrames;
+    private final int bestShotTargetWidth;
+
+    private CameraSessionConfig() {
+        direction = CameraSelector.LENS_FACING_BACK;
+        lens = PreviewOptions.DEFAULT_LENS;
+        aspectRatio = PreviewOptions.DEFAULT_ASPECT_RATIO;
+        targetSize = 0;
+        resolutionPolicy = ResolutionPolicy.fromName(ResolutionPolicy.DEFAULT);
+        sessionMode = CameraPreviewFragment.SESSION_MODE_PHOTO;
+        captureMode = CameraPreviewFragment.CAPTURE_MODE_LATENCY;
+        videoIdleTimeoutMs = DEFAULT_VIDEO_IDLE_TIMEOUT_MS;
+        singlePassExif = true;
+        renditions = null;
+        bestShotFrames = 0;
+        bestShotTargetWidth = DEFAULT_BEST_SHOT_TARGET_WIDTH;
+    }
+
+    private CameraSessionConfig(CameraSessionConfig base, JSONObject options, boolean cameraOptionsOnly) {
+        direction = parseDirection(options.optString("direction", null));
+        lens = PreviewOptions.parseLens(options.optString("lens", null));
+        aspectRatio = PreviewOptions.parseAspectRatio(options.optString("aspectRatio", null));
+        resolutionPolicy = options.has("resolutionPolicy")
+                ? ResolutionPolicy.fromName(PreviewOptions.parseResolutionPolicy(options.optString("resolutionPolicy", null)))
+                : base.resolutionPolicy;
+        sessionMode = parseSessionMode(options, base.sessionMode);
+        captureMode = parseCaptureMode(options, base.captureMode);
+        if (cameraOptionsOnly) {
+            targetSize = base.targetSize;
+            videoIdleTimeoutMs = base.videoIdleTimeoutMs;
+            singlePassExif = base.singlePassExif;
+            renditions = base.renditions;
+            bestShotFrames = base.bestShotFrames;
+            bestShotTargetWidth = base.bestShotTargetWidth;
+            return;
+        }
+
+        targetSize = options.has("targetSize") ? PreviewOptions.parseTargetSize(options.optString("targetSize", null)) : base.targetSize;
+        videoIdleTimeoutMs = options.optInt("videoIdleTimeoutMs", base.videoIdleTimeoutMs);
+        if (videoIdleTimeoutMs < 0) {
+            throw new IllegalArgumentException("videoIdleTimeoutMs cannot be negative");
+        }
+        singlePassExif = options.optBoolean("singlePassExif", base.singlePassExif);
+        renditions = options.has("renditions") ? RenditionGenerator.fromJson(options.optJSONArray("renditions")) : base.renditions;
+        JSONObject bestShot = options.optJSONObject("bestShot");
+        if (bestShot != null) {
+            bestShotFrames = Math.max(MIN_BEST_SHOT_FRAMES, Math.min(MAX_BEST_SHOT_FRAMES, bestShot.optInt("frames", DEFAULT_BEST_SHOT_FRAMES)));
+            bestShotTargetWidth = bestShot.optInt("targetWidth", DEFAULT_BEST_SHOT_TARGET_WIDTH);
+        } else {
+            bestShotFrames = base.bestShotFrames;
+            bestShotTargetWidth = base.bestShotTargetWidth;
+        }
+    }
+
+    /**
+     * Parses the options of enable. Throws an IllegalArgumentException describing an invalid sessionMode,
+     * captureMode, videoIdleTimeoutMs or rendition.
+     */
+    public static CameraSessionConfig fromJson(JSONObject options) {
+        return new CameraSessionConfig(DEFAULT, options != null ? options : new JSONObject(), false);
+    }
+
+    /**
+     * Applies the options of switchCameraTo. direction, lens and aspectRatio fall back to their defaults when
+     * missing, as in enable, resolutionPolicy, sessionMode and captureMode keep their current value, and the other
+     * options can only be set by enable. Throws an IllegalArgumentException describing an invalid sessionMode
+     * or captureMode.
+     */
+    public CameraSessionConfig withCameraOptions(JSONObject options) {
+        return new CameraSessionConfig(this, options != null ? options : new JSONObject(), true);
+    }
+
+    public static int parseDirection(String value) {
+        return "front".equals(value) ? CameraSelector.LENS_FACING_FRONT : CameraSelector.LENS_FACING_BACK;
+    }
+
+    private static String parseSessionMode(JSONObject options, String fallback) {
+        if (!options.has("sessionMode")) {
+            return fallback;
+        }
+        String sessionMode = options.optString("sessionMode");
+        if (!CameraPreviewFragment.SESSION_MODE_PHOTO.equals(sessionMode)
+                && !CameraPreviewFragment.SESSION_MODE_VIDEO.equals(sessionMode)
+                && !CameraPreviewFragment.SESSION_MODE_PHOTO_VIDEO.equals(sessionMode)) {
+            throw new IllegalArgumentException("sessionMode must be " + CameraPreviewFragment.SESSION_MODE_PHOTO + ", "
+                    + CameraPreviewFragment.SESSION_MODE_VIDEO + " or " + CameraPreviewFragment.SESSION_MODE_PHOTO_VIDEO);
+        }
+        return sessionMode;
+    }
+
+    private static String parseCaptureMode(JSONObject options, String fallback) {
+        if (!options.has("captureMode")) {
+            return fallback;
+        }
+        String captureMode = options.optString("captureMode");
+        if (!CameraPreviewFragment.CAPTURE_MODE_QUALITY.equals(captureMode)
+                && !CameraPreviewFragment.CAPTURE_MODE_LATENCY.equals(captureMode)
+                && !CameraPreviewFragment.CAPTURE_MODE_ZSL.equals(captureMode)) {
+            throw new IllegalArgumentException("captureMode must be " + CameraPreviewFragment.CAPTURE_MODE_QUALITY + ", "
+                    + CameraPreviewFragment.CAPTURE_MODE_LATENCY + " or " + CameraPreviewFragment.CAPTURE_MODE_ZSL);
+        }
+        return captureMode;
+    }
+
+    /**
+     * The options that differ from other, a null other differing in every option.
+     */
+    public EnumSet<Change> diff(CameraSessionConfig other) {
+        if (other == null) {
+            return EnumSet.allOf(Change.class);
+        }
+        EnumSet<Change> changes = EnumSet.noneOf(Change.class);
+        if (direction != other.direction || !lens.equals(other.lens)) {
+            changes.add(Change.CAMERA);
+        }
+        if (aspectRatio != other.aspectRatio) {
+            changes.add(Change.ASPECT_RATIO);
+        }
+        if (targetSize != other.targetSize) {
+            changes.add(Change.TARGET_SIZE);
+        }
+        if (!resolutionPolicy.getName().equals(other.resolutionPolicy.getName())) {
+            changes.add(Change.RESOLUTION_POLICY);
+        }
+        if (!sessionMode.equals(other.sessionMode)) {
+            changes.add(Change.SESSION_MODE);
+        }
+        if (!captureMode.equals(other.captureMode)) {
+            changes.add(Change.CAPTURE_MODE);
+        }
+        if (videoIdleTimeoutMs != other.videoIdleTimeoutMs) {
+            changes.add(Change.VIDEO_IDLE_TIMEOUT);
+        }
+        if (singlePassExif != other.singlePassExif) {
+            changes.add(Change.SINGLE_PASS_EXIF);
+        }
+        if (renditions != other.renditions) {
+            changes.add(Change.RENDITIONS);
+        }
+        if (bestShotFrames != other.bestShotFrames || bestShotTargetWidth != other.bestShotTargetWidth) {
+            changes.add(Change.BEST_SHOT);
+        }
+        return changes;
+    }
+
+    public int getDirection() {
+        return direction;
+    }
+
+    public String getLens() {
+        return lens;
+    }
+
+    public double getAspectRatio() {
+        return aspectRatio;
+    }
+
+    public int getTargetSize() {
+        return targetSize;
+    }
+
+    public ResolutionPolicy getResolutionPolicy() {
+        return resolutionPolicy;
+    }
+
+    public String getSessionMode() {
+        return sessionMode;
+    }
+
+    public String getCaptureMode() {
+        return captureMode;
+    }
+
+    public int getVideoIdleTimeoutMs() {
+        return videoIdleTimeoutMs;
+    }
+
+    public boolean isSinglePassExif() {
+        return singlePassExif;
+    }
+
+    /**
+     * The generator of the renditions option, null when no rendition is configured.
+     */
+    public RenditionGenerator getRenditions() {
+        return renditions;
+    }
+
+    /**
+     * The number of frames kept for best-shot captures, 0 when the bestShot option is not set.
+     */
+    public int getBestShotFrames() {
+        return bestShotFrames;
+    }
+
+    public int getBestShotTargetWidth() {
+        return bestShotTargetWidth;
+    }
+}
@@ -0,0 +1,184 @@
+package com.spoon.simplecamerapreview;
+
+import android.content.Context;
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Optional tracing of the plugin's key steps. Each section shows up in system traces through android.os.Trace and
+ * is queued as an event that a background writer appends in batches to a JSONL file in app storage. The file is
+ * rotated once it reaches MAX_FILE_BYTES, keeping the previous one, so the ring stays bounded. Lines use the trace
+ * event format ("ph": "X", microsecond ts and dur), so a dump wrapped in brackets loads in Perfetto.
+ * Sections must end on the thread that began them. When tracing is disabled begin() and end() do nothing.
+ */
+public final class CameraTrace {
+
+    private static final String TAG = "SimpleCameraPreview";
+    private static final String FILE_NAME = "SimpleCameraPreviewTrace.jsonl";
+    private static final String PREVIOUS_FILE_NAME = "SimpleCameraPreviewTrace.1.jsonl";
+    private static final long MAX_FILE_BYTES = 256 * 1024;
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final long FLUSH_INTERVAL_MS = 1000;
+
+    private static final ArrayBlockingQueue<Event> pending = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private static final AtomicLong dropped = new AtomicLong();
+    private static volatile boolean enabled = false;
+    private static File directory;
+    private static ScheduledExecutorService writer;
+
+    private static class Event {
+        final String name;
+        final String thread;
+        final int tid;
+        final long startUs;
+        final long durationUs;
+
+        Event(String name, String thread, int tid, long startUs, long durationUs) {
+            this.name = name;
+            this.thread = thread;
+            this.tid = tid;
+            this.startUs = startUs;
+            this.durationUs = durationUs;
+        }
+    }
+
+    private CameraTrace() {
+    }
+
+    public static synchronized void setEnabled(Context context, boolean enable) {
+        directory = context.getApplicationContext().getFilesDir();
+        enabled = enable;
+        if (enable && writer == null) {
+            writer = Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, "SimpleCameraPreview-trace"));
+            writer.scheduleWithFixedDelay(CameraTrace::flush, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Begins a section and returns the token to hand to end(), 0 when tracing is disabled.
+     */
+    public static long begin(String name) {
+        if (!enabled) {
+            return 0;
+        }
+        Trace.beginSection(name);
+        return SystemClock.elapsedRealtimeNanos();
+    }
+
+    public static void end(String name, long token) {
+        if (token == 0) {
+            return;
+        }
+        Trace.endSection();
+        long endedAt = SystemClock.elapsedRealtimeNanos();
+        Event event = new Event(name, Thread.currentThread().getName(), Process.myTid(), token / 1000, (endedAt - token) / 1000);
+        if (!pending.offer(event)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Writes the pending events, then returns every event of the ring from the oldest, with the number of events
+     * dropped because the writer could not keep up.
+     */
+    public static JSONObject dump() throws IOException {
+        ScheduledExecutorService currentWriter;
+        File currentDirectory;
+        synchronized (CameraTrace.class) {
+            currentWriter = writer;
+            currentDirectory = directory;
+        }
+        if (currentWriter != null) {
+            try {
+                currentWriter.submit(CameraTrace::flush).get();
+            } catch (InterruptedException | ExecutionException e) {
+                throw new IOException("Unable to flush trace events", e);
+            }
+        }
+
+        JSONArray events = new JSONArray();
+        if (currentDirectory != null) {
+            readEvents(new File(currentDirectory, PREVIOUS_FILE_NAME), events);
+            readEvents(new File(currentDirectory, FILE_NAME), events);
+        }
+        JSONObject trace = new JSONObject();
+        try {
+            trace.put("enabled", enabled);
+            trace.put("dropped", dropped.get());
+            trace.put("events", events);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        return trace;
+    }
+
+    private static void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<Event> batch = new ArrayList<>(pending.size());
+        pending.drainTo(batch);
+
+        File file = new File(directory, FILE_NAME);
+        if (file.length() >= MAX_FILE_BYTES && !file.renameTo(new File(directory, PREVIOUS_FILE_NAME))) {
+            Log.w(TAG, "Unable to rotate trace file");
+        }
+        int pid = Process.myPid();
+        try (Writer out = new FileWriter(file, true)) {
+            for (Event event : batch) {
+                JSONObject line = new JSONObject();
+                line.put("name", event.name);
+                line.put("ph", "X");
+                line.put("ts", event.startUs);
+                line.put("dur", event.durationUs);
+                line.put("pid", pid);
+                line.put("tid", event.tid);
+                line.put("args", new JSONObject().put("thread", event.thread));
+                out.write(line.toString());
+                out.write('\n');
+            }
+        } catch (IOException | JSONException e) {
+            Log.w(TAG, "Unable to write trace events: " + e.getMessage());
+            dropped.addAndGet(batch.size());
+        }
+    }
+
+    private static void readEvents(File file, JSONArray events) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try {
+                    events.put(new JSONObject(line));
+                } catch (JSONException e) {
+                    // A line cut short by a crash while writing
+                }
+            }
+        }
+    }
+}
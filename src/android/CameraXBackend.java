@@ -0,0 +1,395 @@
+package com.spoon.simplecamerapreview;
+
+import android.annotation.SuppressLint;
+import android.graphics.ImageFormat;
+import android.hardware.camera2.CameraCharacteristics;
+import android.util.Size;
+import androidx.annotation.NonNull;
+import androidx.camera.camera2.internal.Camera2CameraInfoImpl;
+import androidx.camera.core.AspectRatio;
+import androidx.camera.core.Camera;
+import androidx.camera.core.CameraInfo;
+import androidx.camera.core.CameraSelector;
+import androidx.camera.core.ImageAnalysis;
+import androidx.camera.core.ImageCapture;
+import androidx.camera.core.ImageCaptureException;
+import androidx.camera.core.ImageProxy;
+import androidx.camera.core.Preview;
+import androidx.camera.core.UseCase;
+import androidx.camera.core.resolutionselector.AspectRatioStrategy;
+import androidx.camera.core.resolutionselector.ResolutionSelector;
+import androidx.camera.core.resolutionselector.ResolutionStrategy;
+import androidx.camera.lifecycle.ProcessCameraProvider;
+import androidx.camera.video.FileOutputOptions;
+import androidx.camera.video.PendingRecording;
+import androidx.camera.video.Quality;
+import androidx.camera.video.QualitySelector;
+import androidx.camera.video.Recorder;
+import androidx.camera.video.Recording;
+import androidx.camera.video.VideoCapture;
+import androidx.camera.video.VideoRecordEvent;
+import androidx.camera.view.PreviewView;
+import androidx.core.content.ContextCompat;
+import androidx.fragment.app.FragmentActivity;
+import androidx.lifecycle.LiveData;
+import com.google.common.util.concurrent.ListenableFuture;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+
+/**
+ * CameraBackend on CameraX, binding to the activity lifecycle and streaming the preview into viewFinder.
+ */
+public class CameraXBackend implements CameraBackend {
+
+    private final FragmentActivity activity;
+    private final PreviewView viewFinder;
+    private ProcessCameraProvider cameraProvider;
+    private CameraXProvider provider;
+
+    public CameraXBackend(FragmentActivity activity, PreviewView viewFinder) {
+        this.activity = activity;
+        this.viewFinder = viewFinder;
+    }
+
+    @Override
+    public void getProvider(int direction, ProviderCallback callback) {
+        CameraProviderLoader.getInstance().get(activity, direction, (Exception err, ProcessCameraProvider processCameraProvider) -> {
+            if (err != null) {
+                callback.onProvider(err, null);
+                return;
+            }
+            if (processCameraProvider != cameraProvider) {
+                cameraProvider = processCameraProvider;
+                provider = new CameraXProvider(processCameraProvider);
+            }
+            callback.onProvider(null, provider);
+        });
+    }
+
+    @Override
+    public UseCaseHandle createPreview() {
+        Preview preview = new Preview.Builder().build();
+        preview.setSurfaceProvider(viewFinder.getSurfaceProvider());
+        return new CameraXUseCase(preview);
+    }
+
+    @Override
+    public PhotoCapture createImageCapture(double aspectRatio, Size targetResolution, String captureMode) {
+        ResolutionStrategy resolutionStrategy = targetResolution != null
+                ? new ResolutionStrategy(targetResolution, ResolutionStrategy.FALLBACK_RULE_CLOSEST_HIGHER_THEN_LOWER)
+                : ResolutionStrategy.HIGHEST_AVAILABLE_STRATEGY;
+        ResolutionSelector resolutionSelector = new ResolutionSelector.Builder()
+                .setAspectRatioStrategy(new AspectRatioStrategy(calculateCameraAspect(aspectRatio), AspectRatioStrategy.FALLBACK_RULE_AUTO))
+                .setResolutionStrategy(resolutionStrategy)
+                .build();
+        return new CameraXPhotoCapture(new ImageCapture.Builder()
+                .setResolutionSelector(resolutionSelector)
+                .setCaptureMode(getImageCaptureMode(captureMode))
+                .build());
+    }
+
+    @Override
+    public VideoRecorder createVideoCapture(double aspectRatio) {
+        return new CameraXVideoRecorder(VideoCapture.withOutput(new Recorder.Builder()
+                .setQualitySelector(QualitySelector.from(calculateVideoCaptureRatio(aspectRatio)))
+                .build()));
+    }
+
+    /**
+     * Analysis frames keep only the latest image so a slow consumer never backs up the camera.
+     */
+    @Override
+    public UseCaseHandle createImageAnalysis(double aspectRatio, int targetWidth, FrameAnalyzer frameAnalyzer) {
+        int targetHeight = (int) Math.round(targetWidth * Math.min(aspectRatio, 1 / aspectRatio));
+        ResolutionSelector resolutionSelector = new ResolutionSelector.Builder()
+                .setAspectRatioStrategy(new AspectRatioStrategy(calculateCameraAspect(aspectRatio), AspectRatioStrategy.FALLBACK_RULE_AUTO))
+                .setResolutionStrategy(new ResolutionStrategy(new Size(targetWidth, targetHeight), ResolutionStrategy.FALLBACK_RULE_CLOSEST_LOWER_THEN_HIGHER))
+                .build();
+        ImageAnalysis analysis = new ImageAnalysis.Builder()
+                .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
+                .setOutputImageFormat(ImageAnalysis.OUTPUT_IMAGE_FORMAT_YUV_420_888)
+                .setResolutionSelector(resolutionSelector)
+                .build();
+        analysis.setAnalyzer(FrameAnalyzer.getExecutor(), frameAnalyzer);
+        return new CameraXUseCase(analysis);
+    }
+
+    @Override
+    public LiveData<PreviewView.StreamState> getPreviewStreamState() {
+        return viewFinder.getPreviewStreamState();
+    }
+
+    private static int calculateCameraAspect(double aspectRatio) {
+        return PreviewOptions.isCloserTo3By4(aspectRatio)
+            ? AspectRatio.RATIO_4_3
+            : AspectRatio.RATIO_16_9;
+    }
+
+    private static Quality calculateVideoCaptureRatio(double aspectRatio) {
+        return PreviewOptions.isCloserTo3By4(aspectRatio)
+            ? Quality.LOWEST
+            : Quality.HD;
+    }
+
+    private static int getImageCaptureMode(String captureMode) {
+        if (CameraPreviewFragment.CAPTURE_MODE_QUALITY.equals(captureMode)) {
+            return ImageCapture.CAPTURE_MODE_MAXIMIZE_QUALITY;
+        }
+        if (CameraPreviewFragment.CAPTURE_MODE_ZSL.equals(captureMode)) {
+            return ImageCapture.CAPTURE_MODE_ZERO_SHUTTER_LAG;
+        }
+        return ImageCapture.CAPTURE_MODE_MINIMIZE_LATENCY;
+    }
+
+    private static int getImageCaptureFlashMode(String flashMode) {
+        if (CameraPreviewFragment.FLASH_MODE_ON.equals(flashMode)) {
+            return ImageCapture.FLASH_MODE_ON;
+        }
+        if (CameraPreviewFragment.FLASH_MODE_AUTO.equals(flashMode)) {
+            return ImageCapture.FLASH_MODE_AUTO;
+        }
+        return ImageCapture.FLASH_MODE_OFF;
+    }
+
+    private static UseCase[] unwrap(UseCaseHandle[] useCases) {
+        UseCase[] unwrapped = new UseCase[useCases.length];
+        for (int i = 0; i < useCases.length; i++) {
+            unwrapped[i] = ((CameraXUseCase) useCases[i]).useCase;
+        }
+        return unwrapped;
+    }
+
+    private class CameraXProvider implements Provider {
+        private final ProcessCameraProvider cameraProvider;
+        private CameraSelector cameraSelector;
+        private int selectorDirection = -1;
+        private String selectorLens = null;
+
+        CameraXProvider(ProcessCameraProvider cameraProvider) {
+            this.cameraProvider = cameraProvider;
+        }
+
+        @Override
+        public boolean isZslSupported(int direction, String lens) {
+            return cameraProvider.getCameraInfo(getCameraSelector(direction, lens)).isZslSupported();
+        }
+
+        @Override
+        public BoundCamera bind(int direction, String lens, UseCaseHandle... useCases) {
+            return new CameraXBoundCamera(cameraProvider.bindToLifecycle(activity, getCameraSelector(direction, lens), unwrap(useCases)));
+        }
+
+        @Override
+        public void unbind(UseCaseHandle... useCases) {
+            cameraProvider.unbind(unwrap(useCases));
+        }
+
+        @Override
+        public void unbindAll() {
+            cameraProvider.unbindAll();
+        }
+
+        private CameraSelector getCameraSelector(int direction, String lens) {
+            if (cameraSelector == null || direction != selectorDirection || !lens.equals(selectorLens)) {
+                cameraSelector = buildCameraSelector(direction, lens);
+                selectorDirection = direction;
+                selectorLens = lens;
+            }
+            return cameraSelector;
+        }
+    }
+
+    @SuppressLint("RestrictedApi")
+    private static CameraSelector buildCameraSelector(int direction, String lens) {
+        if (lens.equals("wide") && direction != CameraSelector.LENS_FACING_FRONT) {
+            return new CameraSelector.Builder()
+                    .addCameraFilter(cameraInfos -> {
+                        List<Camera2CameraInfoImpl> backCameras = getCamera2CameraInfos(cameraInfos);
+
+                        Camera2CameraInfoImpl selectedCamera = Collections.min(backCameras, (o1, o2) -> {
+                            float focalLength1 = Objects.requireNonNull(o1.getCameraCharacteristicsCompat().get(CameraCharacteristics.LENS_INFO_AVAILABLE_FOCAL_LENGTHS))[0];
+                            float focalLength2 = Objects.requireNonNull(o2.getCameraCharacteristicsCompat().get(CameraCharacteristics.LENS_INFO_AVAILABLE_FOCAL_LENGTHS))[0];
+                            return Float.compare(focalLength1, focalLength2);
+                        });
+
+                        if (selectedCamera != null) {
+                            return Collections.singletonList(selectedCamera);
+                        } else {
+                            return cameraInfos;
+                        }
+                    })
+                    .build();
+        }
+        return new CameraSelector.Builder()
+                .requireLensFacing(direction)
+                .build();
+    }
+
+    @NonNull
+    @SuppressLint("RestrictedApi")
+    private static List<Camera2CameraInfoImpl> getCamera2CameraInfos(List<CameraInfo> cameraInfos) {
+        List<Camera2CameraInfoImpl> backCameras = new ArrayList<>();
+        for (CameraInfo cameraInfo : cameraInfos) {
+            if (cameraInfo instanceof Camera2CameraInfoImpl) {
+                Camera2CameraInfoImpl camera2CameraInfo = (Camera2CameraInfoImpl) cameraInfo;
+                if (camera2CameraInfo.getLensFacing() == CameraSelector.LENS_FACING_BACK) {
+                    backCameras.add(camera2CameraInfo);
+                }
+            }
+        }
+        return backCameras;
+    }
+
+    private class CameraXBoundCamera implements BoundCamera {
+        private final Camera camera;
+
+        CameraXBoundCamera(Camera camera) {
+            this.camera = camera;
+        }
+
+        @Override
+        public boolean hasFlashUnit() {
+            return camera.getCameraInfo().hasFlashUnit();
+        }
+
+        @Override
+        public void enableTorch(boolean torchOn, TorchCallback torchCallback) {
+            ListenableFuture<Void> torchFuture = camera.getCameraControl().enableTorch(torchOn);
+            torchFuture.addListener(() -> {
+                try {
+                    torchFuture.get();
+                } catch (Exception e) {
+                    torchCallback.onEnabled(e);
+                    return;
+                }
+                torchCallback.onEnabled(null);
+            }, ContextCompat.getMainExecutor(activity));
+        }
+    }
+
+    private static class CameraXUseCase implements UseCaseHandle {
+        final UseCase useCase;
+
+        CameraXUseCase(UseCase useCase) {
+            this.useCase = useCase;
+        }
+    }
+
+    private static class CameraXPhotoCapture extends CameraXUseCase implements PhotoCapture {
+        private final ImageCapture imageCapture;
+
+        CameraXPhotoCapture(ImageCapture imageCapture) {
+            super(imageCapture);
+            this.imageCapture = imageCapture;
+        }
+
+        @Override
+        public void setFlashMode(String flashMode) {
+            imageCapture.setFlashMode(getImageCaptureFlashMode(flashMode));
+        }
+
+        @Override
+        public void takePicture(Executor executor, CaptureCallback callback) {
+            imageCapture.takePicture(executor, new ImageCapture.OnImageCapturedCallback() {
+                @Override
+                public void onCaptureSuccess(@NonNull ImageProxy image) {
+                    if (image.getFormat() != ImageFormat.JPEG) {
+                        int format = image.getFormat();
+                        image.close();
+                        callback.onCaptured(new Exception("Unsupported image format: " + format), null);
+                        return;
+                    }
+                    callback.onCaptured(null, new CameraXCapturedImage(image));
+                }
+
+                @Override
+                public void onError(@NonNull ImageCaptureException exception) {
+                    callback.onCaptured(exception, null);
+                }
+            });
+        }
+
+        @Override
+        public void takePicture(File file, Executor executor, SaveCallback callback) {
+            ImageCapture.OutputFileOptions outputOptions = new ImageCapture.OutputFileOptions.Builder(file).build();
+            imageCapture.takePicture(outputOptions, executor, new ImageCapture.OnImageSavedCallback() {
+                @Override
+                public void onImageSaved(@NonNull ImageCapture.OutputFileResults outputFileResults) {
+                    callback.onSaved(null);
+                }
+
+                @Override
+                public void onError(@NonNull ImageCaptureException exception) {
+                    callback.onSaved(exception);
+                }
+            });
+        }
+    }
+
+    private class CameraXVideoRecorder extends CameraXUseCase implements VideoRecorder {
+        private final VideoCapture<Recorder> videoCapture;
+
+        CameraXVideoRecorder(VideoCapture<Recorder> videoCapture) {
+            super(videoCapture);
+            this.videoCapture = videoCapture;
+        }
+
+        @Override
+        public ActiveRecording startRecording(File file, boolean withAudio, Executor executor, RecordingListener listener) {
+            PendingRecording pendingRecording = videoCapture.getOutput()
+                    .prepareRecording(activity.getApplicationContext(), new FileOutputOptions.Builder(file).build());
+            if (withAudio) {
+                pendingRecording.withAudioEnabled();
+            }
+            Recording recording = pendingRecording.start(executor, videoRecordEvent -> {
+                if (videoRecordEvent instanceof VideoRecordEvent.Start) {
+                    listener.onStart();
+                } else if (videoRecordEvent instanceof VideoRecordEvent.Finalize) {
+                    VideoRecordEvent.Finalize finalizeEvent = (VideoRecordEvent.Finalize) videoRecordEvent;
+                    listener.onFinalize(finalizeEvent.hasError()
+                            ? new Exception(finalizeEvent.getError() + " " + finalizeEvent.getCause())
+                            : null);
+                }
+            });
+            return recording::stop;
+        }
+    }
+
+    private static class CameraXCapturedImage implements CapturedImage {
+        private final ImageProxy image;
+
+        CameraXCapturedImage(ImageProxy image) {
+            this.image = image;
+        }
+
+        @Override
+        public ByteBuffer getJpeg() {
+            return image.getPlanes()[0].getBuffer();
+        }
+
+        @Override
+        public int getWidth() {
+            return image.getWidth();
+        }
+
+        @Override
+        public int getHeight() {
+            return image.getHeight();
+        }
+
+        @Override
+        public int getRotationDegrees() {
+            return image.getImageInfo().getRotationDegrees();
+        }
+
+        @Override
+        public void close() {
+            image.close();
+        }
+    }
+}
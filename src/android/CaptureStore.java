@@ -0,0 +1,364 @@
+package com.spoon.simplecamerapreview;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps an index of the photos, renditions, videos and thumbnails the plugin wrote to the files directory so they
+ * can be listed without scanning it. The index is an append-only journal compacted when it grows past twice the
+ * number of entries. When a quota is set, acknowledged captures are deleted in the order they were acknowledged to
+ * stay under it; captures the app has not acknowledged are never evicted. A photo's renditions are deleted with it.
+ */
+public class CaptureStore {
+
+    public static final String KIND_PHOTO = "photo";
+    public static final String KIND_RENDITION = "rendition";
+    public static final String KIND_VIDEO = "video";
+    public static final String KIND_THUMBNAIL = "thumbnail";
+
+    private static final String TAG = "SimpleCameraPreview";
+    private static final String INDEX_FILE = "SimpleCameraPreviewCaptures.idx";
+    private static final String OP_ADD = "A";
+    private static final String OP_ACKNOWLEDGE = "K";
+    private static final String OP_DELETE = "D";
+    private static final String UUID_REGEX = "[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}";
+    private static final Pattern PHOTO_PATTERN = Pattern.compile(UUID_REGEX + "\\.jpg");
+    private static final Pattern RENDITION_PATTERN = Pattern.compile(UUID_REGEX + "_[A-Za-z0-9_-]+\\.jpg");
+    private static final Pattern VIDEO_PATTERN = Pattern.compile(UUID_REGEX + "\\.mp4");
+    private static final Pattern THUMBNAIL_PATTERN = Pattern.compile("video_thumb_" + UUID_REGEX + "\\.jpg");
+
+    private static CaptureStore instance;
+
+    private final File directory;
+    private final File indexFile;
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private long totalBytes = 0;
+    private long quotaBytes = 0;
+    private int journalLines = 0;
+
+    private static class Entry {
+        final String name;
+        final String kind;
+        final long size;
+        final long modifiedAt;
+        boolean acknowledged = false;
+        long acknowledgedAt;
+
+        Entry(String name, String kind, long size, long modifiedAt) {
+            this.name = name;
+            this.kind = kind;
+            this.size = size;
+            this.modifiedAt = modifiedAt;
+            this.acknowledgedAt = modifiedAt;
+        }
+    }
+
+    private CaptureStore(Context context) {
+        directory = context.getApplicationContext().getFilesDir();
+        indexFile = new File(directory, INDEX_FILE);
+        if (indexFile.exists()) {
+            readIndex();
+        } else {
+            adoptExistingFiles();
+        }
+    }
+
+    public static synchronized CaptureStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new CaptureStore(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Sets the quota in bytes, 0 meaning unlimited, and evicts acknowledged captures to honour it.
+     */
+    public synchronized void setQuotaBytes(long quotaBytes) {
+        this.quotaBytes = Math.max(0, quotaBytes);
+        enforceQuota();
+    }
+
+    /**
+     * Records a file written by the plugin, given as a path or a file:// URI.
+     */
+    public synchronized void register(String nativePath, String kind) {
+        File file = toFile(nativePath);
+        if (file == null || !file.exists()) {
+            return;
+        }
+
+        Entry entry = new Entry(file.getName(), kind, file.length(), file.lastModified());
+        put(entry);
+        append(OP_ADD, entry.name, entry.kind, String.valueOf(entry.size), String.valueOf(entry.modifiedAt));
+        enforceQuota();
+    }
+
+    /**
+     * Marks captures as safe to evict, usually once the app has uploaded or copied them. Returns how many were known.
+     */
+    public synchronized int acknowledge(JSONArray nativePaths) {
+        int acknowledged = 0;
+        long now = System.currentTimeMillis();
+        for (String name : toNames(nativePaths)) {
+            Entry entry = entries.get(name);
+            if (entry == null) {
+                continue;
+            }
+            entry.acknowledged = true;
+            entry.acknowledgedAt = now;
+            append(OP_ACKNOWLEDGE, name, String.valueOf(now));
+            acknowledged++;
+        }
+        enforceQuota();
+        return acknowledged;
+    }
+
+    /**
+     * Deletes the given captures, with the renditions of the photos among them, and returns how many were removed.
+     */
+    public synchronized int delete(JSONArray nativePaths) {
+        int deleted = 0;
+        for (String name : toNames(nativePaths)) {
+            if (entries.containsKey(name)) {
+                remove(name);
+                deleted++;
+            }
+        }
+        compactIfNeeded();
+        return deleted;
+    }
+
+    /**
+     * Lists the indexed captures, oldest first, optionally restricted to one kind or acknowledgement state.
+     */
+    public synchronized JSONObject list(String kind, Boolean acknowledged) {
+        JSONArray captures = new JSONArray();
+        JSONObject data = new JSONObject();
+        try {
+            for (Entry entry : entries.values()) {
+                if ((kind != null && !kind.equals(entry.kind)) || (acknowledged != null && acknowledged != entry.acknowledged)) {
+                    continue;
+                }
+                JSONObject capture = new JSONObject();
+                capture.put("nativePath", Uri.fromFile(new File(directory, entry.name)).toString());
+                capture.put("kind", entry.kind);
+                capture.put("size", entry.size);
+                capture.put("mtime", entry.modifiedAt);
+                capture.put("acknowledged", entry.acknowledged);
+                captures.put(capture);
+            }
+            data.put("captures", captures);
+            data.put("totalBytes", totalBytes);
+            data.put("quotaBytes", quotaBytes);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        return data;
+    }
+
+    private void enforceQuota() {
+        if (quotaBytes > 0 && totalBytes > quotaBytes) {
+            List<Entry> evictable = new ArrayList<>();
+            for (Entry entry : entries.values()) {
+                if (entry.acknowledged) {
+                    evictable.add(entry);
+                }
+            }
+            Collections.sort(evictable, (a, b) -> Long.compare(a.acknowledgedAt, b.acknowledgedAt));
+            for (Entry entry : evictable) {
+                if (totalBytes <= quotaBytes) {
+                    break;
+                }
+                Log.d(TAG, "Evicting " + entry.name + " to stay under the capture quota");
+                remove(entry.name);
+            }
+            if (totalBytes > quotaBytes) {
+                Log.w(TAG, "Captures use " + totalBytes + " bytes, over the " + quotaBytes + " bytes quota, but none is acknowledged");
+            }
+        }
+        compactIfNeeded();
+    }
+
+    private void put(Entry entry) {
+        Entry previous = entries.remove(entry.name);
+        if (previous != null) {
+            totalBytes -= previous.size;
+        }
+        entries.put(entry.name, entry);
+        totalBytes += entry.size;
+    }
+
+    private void remove(String name) {
+        Entry entry = entries.remove(name);
+        if (entry == null) {
+            return;
+        }
+        totalBytes -= entry.size;
+        File file = new File(directory, name);
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Unable to delete " + name);
+        }
+        append(OP_DELETE, name);
+
+        if (KIND_PHOTO.equals(entry.kind)) {
+            // Renditions are named <photo>_<rendition>.jpg and are of no use without their photo
+            String prefix = name.substring(0, name.length() - ".jpg".length()) + "_";
+            List<String> renditions = new ArrayList<>();
+            for (Entry candidate : entries.values()) {
+                if (KIND_RENDITION.equals(candidate.kind) && candidate.name.startsWith(prefix)) {
+                    renditions.add(candidate.name);
+                }
+            }
+            for (String rendition : renditions) {
+                remove(rendition);
+            }
+        }
+    }
+
+    private void append(String... fields) {
+        try (Writer writer = new BufferedWriter(new FileWriter(indexFile, true))) {
+            writer.write(String.join("\t", fields));
+            writer.write('\n');
+            journalLines++;
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to update capture index: " + e.getMessage());
+        }
+    }
+
+    private void compactIfNeeded() {
+        if (journalLines <= Math.max(64, entries.size() * 2)) {
+            return;
+        }
+
+        File tmpFile = new File(directory, INDEX_FILE + ".tmp");
+        int lines = 0;
+        try (Writer writer = new BufferedWriter(new FileWriter(tmpFile))) {
+            for (Entry entry : entries.values()) {
+                writer.write(String.join("\t", OP_ADD, entry.name, entry.kind, String.valueOf(entry.size), String.valueOf(entry.modifiedAt)));
+                writer.write('\n');
+                lines++;
+                if (entry.acknowledged) {
+                    writer.write(String.join("\t", OP_ACKNOWLEDGE, entry.name, String.valueOf(entry.acknowledgedAt)));
+                    writer.write('\n');
+                    lines++;
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to compact capture index: " + e.getMessage());
+            return;
+        }
+        if (tmpFile.renameTo(indexFile)) {
+            journalLines = lines;
+        }
+    }
+
+    private void readIndex() {
+        try (BufferedReader reader = new BufferedReader(new FileReader(indexFile))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                journalLines++;
+                String[] fields = line.split("\t");
+                try {
+                    if (OP_ADD.equals(fields[0]) && fields.length == 5) {
+                        put(new Entry(fields[1], fields[2], Long.parseLong(fields[3]), Long.parseLong(fields[4])));
+                    } else if (OP_ACKNOWLEDGE.equals(fields[0]) && fields.length == 3 && entries.containsKey(fields[1])) {
+                        entries.get(fields[1]).acknowledged = true;
+                        entries.get(fields[1]).acknowledgedAt = Long.parseLong(fields[2]);
+                    } else if (OP_DELETE.equals(fields[0]) && fields.length == 2) {
+                        Entry entry = entries.remove(fields[1]);
+                        if (entry != null) {
+                            totalBytes -= entry.size;
+                        }
+                    }
+                } catch (NumberFormatException e) {
+                    Log.w(TAG, "Skipping capture index line: " + line);
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to read capture index: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Builds the index once from the files written before it existed.
+     */
+    private void adoptExistingFiles() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String kind = getKind(file.getName());
+                if (kind != null) {
+                    put(new Entry(file.getName(), kind, file.length(), file.lastModified()));
+                }
+            }
+        }
+        journalLines = Integer.MAX_VALUE;
+        compactIfNeeded();
+    }
+
+    private static String getKind(String name) {
+        if (PHOTO_PATTERN.matcher(name).matches()) {
+            return KIND_PHOTO;
+        }
+        if (RENDITION_PATTERN.matcher(name).matches()) {
+            return KIND_RENDITION;
+        }
+        if (VIDEO_PATTERN.matcher(name).matches()) {
+            return KIND_VIDEO;
+        }
+        if (THUMBNAIL_PATTERN.matcher(name).matches()) {
+            return KIND_THUMBNAIL;
+        }
+        return null;
+    }
+
+    private List<String> toNames(JSONArray nativePaths) {
+        List<String> names = new ArrayList<>();
+        if (nativePaths == null) {
+            return names;
+        }
+        for (int i = 0; i < nativePaths.length(); i++) {
+            File file = toFile(nativePaths.optString(i, null));
+            if (file != null) {
+                names.add(file.getName());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Only files directly in the files directory are accepted, so a path cannot reach outside of it.
+     */
+    private File toFile(String nativePath) {
+        if (nativePath == null || nativePath.isEmpty()) {
+            return null;
+        }
+        String path = nativePath.startsWith("file:") ? Uri.parse(nativePath).getPath() : nativePath;
+        if (path == null) {
+            return null;
+        }
+        File file = new File(path);
+        File parent = file.getParentFile();
+        if (parent != null && !parent.getAbsolutePath().equals(directory.getAbsolutePath())) {
+            return null;
+        }
+        return new File(directory, file.getName());
+    }
+}
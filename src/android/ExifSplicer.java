@@ -0,0 +1,417 @@
+package com.spoon.simplecamerapreview;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Writes an encoded JPEG with its Exif APP1 segment updated in a single streaming pass.
+ * The original TIFF data is kept byte for byte; a new IFD0 carrying the orientation and a GPS IFD pointer is
+ * appended after it and the TIFF header is pointed at it, so no existing offset has to be rewritten. IFD1 is copied
+ * after the new IFDs too, since some readers ignore an IFD that is linked to from further in the data.
+ * This class has no Android dependencies so it can be exercised on the JVM.
+ */
+public final class ExifSplicer {
+
+    public static final int ORIENTATION_UNDEFINED = 0;
+
+    private static final int MARKER_SOI = 0xFFD8;
+    private static final int MARKER_APP0 = 0xFFE0;
+    private static final int MARKER_APP1 = 0xFFE1;
+    private static final int MAX_SEGMENT_LENGTH = 0xFFFF;
+    private static final byte[] EXIF_IDENTIFIER = {'E', 'x', 'i', 'f', 0, 0};
+    private static final int COPY_CHUNK_SIZE = 64 * 1024;
+
+    private static final int TAG_ORIENTATION = 0x0112;
+    private static final int TAG_GPS_IFD_POINTER = 0x8825;
+    private static final int TAG_GPS_VERSION_ID = 0x0000;
+    private static final int TAG_GPS_LATITUDE_REF = 0x0001;
+    private static final int TAG_GPS_LATITUDE = 0x0002;
+    private static final int TAG_GPS_LONGITUDE_REF = 0x0003;
+    private static final int TAG_GPS_LONGITUDE = 0x0004;
+    private static final int TAG_GPS_ALTITUDE_REF = 0x0005;
+    private static final int TAG_GPS_ALTITUDE = 0x0006;
+    private static final int TAG_GPS_TIMESTAMP = 0x0007;
+    private static final int TAG_GPS_SPEED_REF = 0x000C;
+    private static final int TAG_GPS_SPEED = 0x000D;
+    private static final int TAG_GPS_DATESTAMP = 0x001D;
+
+    private static final int TYPE_BYTE = 1;
+    private static final int TYPE_ASCII = 2;
+    private static final int TYPE_SHORT = 3;
+    private static final int TYPE_LONG = 4;
+    private static final int TYPE_RATIONAL = 5;
+
+    private ExifSplicer() {
+
+    }
+
+    public static class GpsInfo {
+        private final double latitude;
+        private final double longitude;
+        private final double altitude;
+        private final double speedMetersPerSecond;
+        private final long timeMillis;
+
+        /**
+         * altitude and speedMetersPerSecond may be Double.NaN when unknown.
+         */
+        public GpsInfo(double latitude, double longitude, double altitude, double speedMetersPerSecond, long timeMillis) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.altitude = altitude;
+            this.speedMetersPerSecond = speedMetersPerSecond;
+            this.timeMillis = timeMillis;
+        }
+    }
+
+    private static class Entry {
+        final int tag;
+        final int type;
+        final int count;
+        final byte[] value;
+
+        Entry(int tag, int type, int count, byte[] value) {
+            this.tag = tag;
+            this.type = type;
+            this.count = count;
+            this.value = value;
+        }
+    }
+
+    public static int orientationFromRotation(int rotationDegrees) {
+        switch (((rotationDegrees % 360) + 360) % 360) {
+            case 90:
+                return 6;
+            case 180:
+                return 3;
+            case 270:
+                return 8;
+            default:
+                return 1;
+        }
+    }
+
+    /**
+     * Streams the JPEG between the buffer position and limit to out, replacing or inserting the Exif APP1 segment.
+     * orientation may be ORIENTATION_UNDEFINED and gps may be null to leave the existing values untouched.
+     * Throws an IOException when the input is not a JPEG or the updated segment would not fit in an APP1 marker.
+     */
+    public static void splice(ByteBuffer jpeg, int orientation, GpsInfo gps, OutputStream out) throws IOException {
+        ByteBuffer data = jpeg.duplicate().order(ByteOrder.BIG_ENDIAN);
+        int start = data.position();
+        int limit = data.limit();
+        if (limit - start < 4 || readUnsignedShort(data, start) != MARKER_SOI) {
+            throw new IOException("Not a JPEG image");
+        }
+
+        int insertAt = start + 2;
+        int exifStart = -1;
+        int exifEnd = -1;
+        int offset = start + 2;
+        while (offset + 4 <= limit) {
+            int marker = readUnsignedShort(data, offset);
+            if ((marker & 0xFFF0) != MARKER_APP0) {
+                break;
+            }
+            int segmentEnd = offset + 2 + readUnsignedShort(data, offset + 2);
+            if (segmentEnd > limit) {
+                break;
+            }
+            if (marker == MARKER_APP1 && hasExifIdentifier(data, offset + 4, segmentEnd)) {
+                exifStart = offset;
+                exifEnd = segmentEnd;
+                break;
+            }
+            if (marker == MARKER_APP0 && offset == start + 2) {
+                insertAt = segmentEnd;
+            }
+            offset = segmentEnd;
+        }
+
+        byte[] app1 = exifStart >= 0
+                ? buildApp1(data, exifStart + 4 + EXIF_IDENTIFIER.length, exifEnd, orientation, gps)
+                : buildApp1(null, 0, 0, orientation, gps);
+
+        byte[] chunk = new byte[COPY_CHUNK_SIZE];
+        copy(data, start, exifStart >= 0 ? exifStart : insertAt, out, chunk);
+        out.write(app1);
+        copy(data, exifStart >= 0 ? exifEnd : insertAt, limit, out, chunk);
+    }
+
+    private static byte[] buildApp1(ByteBuffer data, int tiffStart, int tiffEnd, int orientation, GpsInfo gps) throws IOException {
+        ByteOrder order = ByteOrder.BIG_ENDIAN;
+        byte[] tiff = null;
+        List<Entry> ifd0Entries = new ArrayList<>();
+        long nextIfdOffset = 0;
+        List<Entry> ifd1Entries = null;
+        long ifd1NextOffset = 0;
+
+        if (data != null && tiffEnd - tiffStart >= 8) {
+            tiff = new byte[tiffEnd - tiffStart];
+            ByteBuffer source = data.duplicate();
+            source.position(tiffStart);
+            source.get(tiff);
+
+            ByteBuffer tiffBuffer = ByteBuffer.wrap(tiff);
+            order = tiff[0] == 'I' ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+            tiffBuffer.order(order);
+            nextIfdOffset = readIfd(tiffBuffer, tiffBuffer.getInt(4) & 0xFFFFFFFFL, ifd0Entries);
+            if (nextIfdOffset < 0) {
+                tiff = null;
+            } else if (nextIfdOffset > 0) {
+                ifd1Entries = new ArrayList<>();
+                ifd1NextOffset = readIfd(tiffBuffer, nextIfdOffset, ifd1Entries);
+                if (ifd1NextOffset < 0) {
+                    ifd1Entries = null;
+                }
+            }
+        }
+
+        if (tiff == null) {
+            order = ByteOrder.BIG_ENDIAN;
+            tiff = new byte[]{'M', 'M', 0, 42, 0, 0, 0, 8};
+            ifd0Entries.clear();
+            nextIfdOffset = 0;
+            ifd1Entries = null;
+        }
+
+        if (orientation != ORIENTATION_UNDEFINED) {
+            removeTag(ifd0Entries, TAG_ORIENTATION);
+            ifd0Entries.add(new Entry(TAG_ORIENTATION, TYPE_SHORT, 1, shortValue(order, orientation)));
+        }
+        List<Entry> gpsEntries = gps != null ? buildGpsEntries(gps, order) : null;
+        if (gpsEntries != null) {
+            removeTag(ifd0Entries, TAG_GPS_IFD_POINTER);
+            ifd0Entries.add(new Entry(TAG_GPS_IFD_POINTER, TYPE_LONG, 1, new byte[4]));
+        }
+        ifd0Entries.sort((a, b) -> Integer.compare(a.tag, b.tag));
+
+        int newIfd0Offset = tiff.length + (tiff.length % 2);
+        int gpsIfdOffset = newIfd0Offset + ifdSize(ifd0Entries.size());
+        int ifd1Offset = gpsIfdOffset + (gpsEntries != null ? ifdBlockSize(gpsEntries) : 0);
+        if (gpsEntries != null) {
+            for (int i = 0; i < ifd0Entries.size(); i++) {
+                if (ifd0Entries.get(i).tag == TAG_GPS_IFD_POINTER) {
+                    ifd0Entries.set(i, new Entry(TAG_GPS_IFD_POINTER, TYPE_LONG, 1, intValue(order, gpsIfdOffset)));
+                }
+            }
+        }
+
+        ByteArrayOutputStream tiffOut = new ByteArrayOutputStream(gpsIfdOffset + 256);
+        tiffOut.write(tiff);
+        ByteBuffer header = ByteBuffer.allocate(4).order(order);
+        header.putInt(newIfd0Offset);
+        byte[] patchedHeader = tiffOut.toByteArray();
+        System.arraycopy(header.array(), 0, patchedHeader, 4, 4);
+        tiffOut.reset();
+        tiffOut.write(patchedHeader);
+        if (tiff.length % 2 != 0) {
+            tiffOut.write(0);
+        }
+        writeIfd(tiffOut, ifd0Entries, newIfd0Offset, ifd1Entries != null ? ifd1Offset : nextIfdOffset, order);
+        if (gpsEntries != null) {
+            writeIfd(tiffOut, gpsEntries, gpsIfdOffset, 0, order);
+        }
+        if (ifd1Entries != null) {
+            writeIfd(tiffOut, ifd1Entries, ifd1Offset, ifd1NextOffset, order);
+        }
+
+        int segmentLength = 2 + EXIF_IDENTIFIER.length + tiffOut.size();
+        if (segmentLength > MAX_SEGMENT_LENGTH) {
+            throw new IOException("Exif segment too large: " + segmentLength + " bytes");
+        }
+
+        ByteArrayOutputStream app1 = new ByteArrayOutputStream(segmentLength + 2);
+        app1.write(MARKER_APP1 >> 8);
+        app1.write(MARKER_APP1 & 0xFF);
+        app1.write(segmentLength >> 8);
+        app1.write(segmentLength & 0xFF);
+        app1.write(EXIF_IDENTIFIER);
+        tiffOut.writeTo(app1);
+        return app1.toByteArray();
+    }
+
+    private static List<Entry> buildGpsEntries(GpsInfo gps, ByteOrder order) {
+        List<Entry> entries = new ArrayList<>();
+        entries.add(new Entry(TAG_GPS_VERSION_ID, TYPE_BYTE, 4, new byte[]{2, 2, 0, 0}));
+        entries.add(new Entry(TAG_GPS_LATITUDE_REF, TYPE_ASCII, 2, asciiValue(gps.latitude >= 0 ? "N" : "S")));
+        entries.add(new Entry(TAG_GPS_LATITUDE, TYPE_RATIONAL, 3, degreesValue(order, Math.abs(gps.latitude))));
+        entries.add(new Entry(TAG_GPS_LONGITUDE_REF, TYPE_ASCII, 2, asciiValue(gps.longitude >= 0 ? "E" : "W")));
+        entries.add(new Entry(TAG_GPS_LONGITUDE, TYPE_RATIONAL, 3, degreesValue(order, Math.abs(gps.longitude))));
+        if (!Double.isNaN(gps.altitude)) {
+            entries.add(new Entry(TAG_GPS_ALTITUDE_REF, TYPE_BYTE, 1, new byte[]{(byte) (gps.altitude >= 0 ? 0 : 1), 0, 0, 0}));
+            entries.add(new Entry(TAG_GPS_ALTITUDE, TYPE_RATIONAL, 1, rationalValue(order, Math.abs(gps.altitude), 10000)));
+        }
+
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"), Locale.US);
+        calendar.setTimeInMillis(gps.timeMillis);
+        ByteBuffer time = ByteBuffer.allocate(24).order(order);
+        time.putInt(calendar.get(Calendar.HOUR_OF_DAY)).putInt(1);
+        time.putInt(calendar.get(Calendar.MINUTE)).putInt(1);
+        time.putInt(calendar.get(Calendar.SECOND)).putInt(1);
+        entries.add(new Entry(TAG_GPS_TIMESTAMP, TYPE_RATIONAL, 3, time.array()));
+
+        if (!Double.isNaN(gps.speedMetersPerSecond)) {
+            entries.add(new Entry(TAG_GPS_SPEED_REF, TYPE_ASCII, 2, asciiValue("K")));
+            entries.add(new Entry(TAG_GPS_SPEED, TYPE_RATIONAL, 1, rationalValue(order, gps.speedMetersPerSecond * 3.6, 1000)));
+        }
+
+        String date = String.format(Locale.US, "%04d:%02d:%02d",
+                calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH) + 1, calendar.get(Calendar.DAY_OF_MONTH));
+        entries.add(new Entry(TAG_GPS_DATESTAMP, TYPE_ASCII, 11, asciiValue(date)));
+        return entries;
+    }
+
+    private static void writeIfd(ByteArrayOutputStream out, List<Entry> entries, int ifdOffset, long nextIfdOffset, ByteOrder order) {
+        int dataOffset = ifdOffset + ifdSize(entries.size());
+        ByteBuffer ifd = ByteBuffer.allocate(ifdSize(entries.size())).order(order);
+        ByteArrayOutputStream values = new ByteArrayOutputStream();
+
+        ifd.putShort((short) entries.size());
+        for (Entry entry : entries) {
+            ifd.putShort((short) entry.tag);
+            ifd.putShort((short) entry.type);
+            ifd.putInt(entry.count);
+            if (entry.value.length <= 4) {
+                byte[] inline = new byte[4];
+                System.arraycopy(entry.value, 0, inline, 0, entry.value.length);
+                ifd.put(inline);
+            } else {
+                ifd.putInt(dataOffset + values.size());
+                values.write(entry.value, 0, entry.value.length);
+                if (entry.value.length % 2 != 0) {
+                    values.write(0);
+                }
+            }
+        }
+        ifd.putInt((int) nextIfdOffset);
+
+        out.write(ifd.array(), 0, ifd.capacity());
+        out.write(values.toByteArray(), 0, values.size());
+    }
+
+    /**
+     * Reads the entries of the IFD at offset into entries, keeping the value field of each as is. Returns the offset
+     * of the next IFD, or -1 when the IFD does not fit in the TIFF data.
+     */
+    private static long readIfd(ByteBuffer tiff, long offset, List<Entry> entries) {
+        if (offset + 2 > tiff.capacity()) {
+            return -1;
+        }
+        int count = tiff.getShort((int) offset) & 0xFFFF;
+        int entriesStart = (int) offset + 2;
+        if (entriesStart + count * 12 + 4 > tiff.capacity()) {
+            return -1;
+        }
+        for (int i = 0; i < count; i++) {
+            int entryOffset = entriesStart + i * 12;
+            byte[] value = new byte[4];
+            tiff.position(entryOffset + 8);
+            tiff.get(value);
+            entries.add(new Entry(
+                    tiff.getShort(entryOffset) & 0xFFFF,
+                    tiff.getShort(entryOffset + 2) & 0xFFFF,
+                    tiff.getInt(entryOffset + 4),
+                    value
+            ));
+        }
+        return tiff.getInt(entriesStart + count * 12) & 0xFFFFFFFFL;
+    }
+
+    private static int ifdSize(int entryCount) {
+        return 2 + entryCount * 12 + 4;
+    }
+
+    private static int ifdBlockSize(List<Entry> entries) {
+        int size = ifdSize(entries.size());
+        for (Entry entry : entries) {
+            if (entry.value.length > 4) {
+                size += entry.value.length + (entry.value.length % 2);
+            }
+        }
+        return size;
+    }
+
+    private static void removeTag(List<Entry> entries, int tag) {
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            if (entries.get(i).tag == tag) {
+                entries.remove(i);
+            }
+        }
+    }
+
+    private static byte[] shortValue(ByteOrder order, int value) {
+        return ByteBuffer.allocate(4).order(order).putShort((short) value).array();
+    }
+
+    private static byte[] intValue(ByteOrder order, int value) {
+        return ByteBuffer.allocate(4).order(order).putInt(value).array();
+    }
+
+    private static byte[] asciiValue(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+        byte[] terminated = new byte[bytes.length + 1];
+        System.arraycopy(bytes, 0, terminated, 0, bytes.length);
+        return terminated;
+    }
+
+    private static byte[] rationalValue(ByteOrder order, double value, int denominator) {
+        return ByteBuffer.allocate(8).order(order)
+                .putInt((int) Math.round(value * denominator))
+                .putInt(denominator)
+                .array();
+    }
+
+    private static byte[] degreesValue(ByteOrder order, double value) {
+        int degrees = (int) value;
+        double remainder = (value - degrees) * 60;
+        int minutes = (int) remainder;
+        double seconds = (remainder - minutes) * 60;
+        return ByteBuffer.allocate(24).order(order)
+                .putInt(degrees).putInt(1)
+                .putInt(minutes).putInt(1)
+                .putInt((int) Math.round(seconds * 10000)).putInt(10000)
+                .array();
+    }
+
+    private static boolean hasExifIdentifier(ByteBuffer data, int offset, int limit) {
+        if (offset + EXIF_IDENTIFIER.length > limit) {
+            return false;
+        }
+        for (int i = 0; i < EXIF_IDENTIFIER.length; i++) {
+            if (data.get(offset + i) != EXIF_IDENTIFIER[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int readUnsignedShort(ByteBuffer data, int offset) {
+        return data.getShort(offset) & 0xFFFF;
+    }
+
+    private static void copy(ByteBuffer data, int from, int to, OutputStream out, byte[] chunk) throws IOException {
+        if (data.hasArray()) {
+            out.write(data.array(), data.arrayOffset() + from, to - from);
+            return;
+        }
+
+        ByteBuffer source = data.duplicate();
+        source.limit(to);
+        source.position(from);
+        while (source.hasRemaining()) {
+            int length = Math.min(chunk.length, source.remaining());
+            source.get(chunk, 0, length);
+            out.write(chunk, 0, length);
+        }
+    }
+}
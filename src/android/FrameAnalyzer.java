@@ -0,0 +1,163 @@
+package com.spoon.simplecamerapreview;
+
+import android.os.SystemClock;
+import androidx.annotation.NonNull;
+import androidx.camera.core.ImageAnalysis;
+import androidx.camera.core.ImageProxy;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+interface FrameConsumer {
+    /**
+     * Called for every analysis frame, must not allocate. The frame is only handed over when a consumer wants it.
+     */
+    boolean wantsFrame(long nowMs);
+
+    /**
+     * The frame and its buffers are reused for the next frame and must not be kept.
+     */
+    void onFrame(FrameAnalyzer.Frame frame);
+}
+
+/**
+ * ImageAnalysis analyzer that copies the Y plane of the frames its consumers ask for into a buffer allocated once per
+ * analysis resolution and hands it to them on the analysis thread. Frames nobody wants are closed right away.
+ */
+public class FrameAnalyzer implements ImageAnalysis.Analyzer {
+
+    private static ExecutorService executor;
+
+    private volatile FrameConsumer[] consumers = new FrameConsumer[0];
+    private final Frame frame = new Frame();
+
+    public static class Frame {
+        private byte[] y = new byte[0];
+        private int width;
+        private int height;
+        private int rotationDegrees;
+        private long timestampNs;
+        private long receivedAtMs;
+        private ImageProxy image;
+
+        /**
+         * Y plane packed with a row stride equal to the width.
+         */
+        public byte[] getY() {
+            return y;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public int getRotationDegrees() {
+            return rotationDegrees;
+        }
+
+        public long getTimestampNs() {
+            return timestampNs;
+        }
+
+        public long getReceivedAtMs() {
+            return receivedAtMs;
+        }
+
+        /**
+         * The frame being analyzed, only valid during onFrame.
+         */
+        public ImageProxy getImage() {
+            return image;
+        }
+    }
+
+    public static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "SimpleCameraPreview-analysis"));
+        }
+        return executor;
+    }
+
+    public synchronized void addConsumer(FrameConsumer consumer) {
+        FrameConsumer[] updated = new FrameConsumer[consumers.length + 1];
+        System.arraycopy(consumers, 0, updated, 0, consumers.length);
+        updated[consumers.length] = consumer;
+        consumers = updated;
+    }
+
+    public synchronized void removeConsumer(FrameConsumer consumer) {
+        int index = -1;
+        for (int i = 0; i < consumers.length; i++) {
+            if (consumers[i] == consumer) {
+                index = i;
+            }
+        }
+        if (index < 0) {
+            return;
+        }
+        FrameConsumer[] updated = new FrameConsumer[consumers.length - 1];
+        System.arraycopy(consumers, 0, updated, 0, index);
+        System.arraycopy(consumers, index + 1, updated, index, consumers.length - index - 1);
+        consumers = updated;
+    }
+
+    public boolean hasConsumers() {
+        return consumers.length > 0;
+    }
+
+    @Override
+    public void analyze(@NonNull ImageProxy image) {
+        FrameConsumer[] current = consumers;
+        long nowMs = SystemClock.elapsedRealtime();
+        try {
+            boolean wanted = false;
+            for (FrameConsumer consumer : current) {
+                wanted |= consumer.wantsFrame(nowMs);
+            }
+            if (!wanted) {
+                return;
+            }
+
+            copyLuma(image);
+            frame.rotationDegrees = image.getImageInfo().getRotationDegrees();
+            frame.timestampNs = image.getImageInfo().getTimestamp();
+            frame.receivedAtMs = nowMs;
+            frame.image = image;
+            for (FrameConsumer consumer : current) {
+                if (consumer.wantsFrame(nowMs)) {
+                    consumer.onFrame(frame);
+                }
+            }
+        } finally {
+            frame.image = null;
+            image.close();
+        }
+    }
+
+    private void copyLuma(ImageProxy image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        if (frame.y.length != width * height) {
+            frame.y = new byte[width * height];
+        }
+        frame.width = width;
+        frame.height = height;
+
+        ImageProxy.PlaneProxy plane = image.getPlanes()[0];
+        ByteBuffer buffer = plane.getBuffer();
+        int rowStride = plane.getRowStride();
+        if (rowStride == width) {
+            buffer.rewind();
+            buffer.get(frame.y, 0, width * height);
+            return;
+        }
+        for (int row = 0; row < height; row++) {
+            buffer.position(row * rowStride);
+            buffer.get(frame.y, row * width, width);
+        }
+    }
+}
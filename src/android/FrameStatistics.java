@@ -0,0 +1,86 @@
+package com.spoon.simplecamerapreview;
+
+/**
+ * Luminance statistics of a Y plane: mean, 256 bin histogram and the share of clipped shadows and highlights.
+ * compute() only writes into the arrays allocated with the instance, so it can run on every analysis frame.
+ * This class has no Android dependencies so it can be exercised on the JVM.
+ */
+public final class FrameStatistics {
+
+    public static final int BINS = 256;
+    public static final int SHADOW_CLIP_LEVEL = 4;
+    public static final int HIGHLIGHT_CLIP_LEVEL = 251;
+
+    private final int[] histogram = new int[BINS];
+    private int sampleCount;
+    private double meanLuma;
+    private double shadowClipping;
+    private double highlightClipping;
+
+    /**
+     * Samples every step-th pixel of every step-th row of a width x height plane stored with rowStride bytes per row.
+     */
+    public void compute(byte[] y, int width, int height, int rowStride, int step) {
+        int[] bins = histogram;
+        for (int i = 0; i < BINS; i++) {
+            bins[i] = 0;
+        }
+
+        long sum = 0;
+        int samples = 0;
+        for (int row = 0; row < height; row += step) {
+            int offset = row * rowStride;
+            int end = offset + width;
+            for (int i = offset; i < end; i += step) {
+                int luma = y[i] & 0xFF;
+                bins[luma]++;
+                sum += luma;
+                samples++;
+            }
+        }
+
+        int shadows = 0;
+        for (int i = 0; i <= SHADOW_CLIP_LEVEL; i++) {
+            shadows += bins[i];
+        }
+        int highlights = 0;
+        for (int i = HIGHLIGHT_CLIP_LEVEL; i < BINS; i++) {
+            highlights += bins[i];
+        }
+
+        sampleCount = samples;
+        meanLuma = samples > 0 ? (double) sum / samples : 0;
+        shadowClipping = samples > 0 ? (double) shadows / samples : 0;
+        highlightClipping = samples > 0 ? (double) highlights / samples : 0;
+    }
+
+    /**
+     * Folds the histogram into binCount bins (a divisor of 256) of sample shares, written to out.
+     */
+    public void foldHistogram(double[] out, int binCount) {
+        int width = BINS / binCount;
+        for (int bin = 0; bin < binCount; bin++) {
+            int count = 0;
+            for (int i = bin * width; i < (bin + 1) * width; i++) {
+                count += histogram[i];
+            }
+            out[bin] = sampleCount > 0 ? (double) count / sampleCount : 0;
+        }
+    }
+
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    public double getMeanLuma() {
+        return meanLuma;
+    }
+
+    public double getShadowClipping() {
+        return shadowClipping;
+    }
+
+    public double getHighlightClipping() {
+        return highlightClipping;
+    }
+}
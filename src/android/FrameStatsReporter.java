@@ -0,0 +1,58 @@
+package com.spoon.simplecamerapreview;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+interface FrameStatsCallback {
+    void onStats(JSONObject stats);
+}
+
+/**
+ * Computes FrameStatistics for at most one analysis frame every intervalMs and reports them as JSON.
+ */
+public class FrameStatsReporter implements FrameConsumer {
+
+    private static final int SAMPLE_STEP = 2;
+
+    private final long intervalMs;
+    private final int histogramBins;
+    private final FrameStatsCallback callback;
+    private final FrameStatistics statistics = new FrameStatistics();
+    private final double[] histogram;
+    private long lastReportedAtMs = 0;
+
+    public FrameStatsReporter(long intervalMs, int histogramBins, FrameStatsCallback callback) {
+        this.intervalMs = intervalMs;
+        this.histogramBins = histogramBins;
+        this.callback = callback;
+        this.histogram = new double[histogramBins];
+    }
+
+    @Override
+    public boolean wantsFrame(long nowMs) {
+        return nowMs - lastReportedAtMs >= intervalMs;
+    }
+
+    @Override
+    public void onFrame(FrameAnalyzer.Frame frame) {
+        lastReportedAtMs = frame.getReceivedAtMs();
+        statistics.compute(frame.getY(), frame.getWidth(), frame.getHeight(), frame.getWidth(), SAMPLE_STEP);
+        statistics.foldHistogram(histogram, histogramBins);
+
+        JSONObject stats = new JSONObject();
+        try {
+            stats.put("meanLuma", statistics.getMeanLuma());
+            stats.put("shadowClipping", statistics.getShadowClipping());
+            stats.put("highlightClipping", statistics.getHighlightClipping());
+            stats.put("histogram", new JSONArray(histogram));
+            stats.put("width", frame.getWidth());
+            stats.put("height", frame.getHeight());
+            stats.put("timestampNs", frame.getTimestampNs());
+        } catch (JSONException e) {
+            e.printStackTrace();
+            return;
+        }
+        callback.onStats(stats);
+    }
+}
@@ -0,0 +1,257 @@
+package com.spoon.simplecamerapreview;
+
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.YuvImage;
+import androidx.camera.core.ImageProxy;
+import org.json.JSONException;
+import org.json.JSONObject;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+interface FrameStreamCallback {
+    void onFrame(byte[] data, JSONObject metadata);
+}
+
+/**
+ * Streams analysis frames at up to fps frames per second, scaled down to maxEdge pixels, as JPEG or raw RGBA. The
+ * analysis thread only copies the frame into a pooled NV21 buffer, encoding runs on a small worker pool. When every
+ * worker is busy and the queue is full the oldest queued frame is dropped, so a slow receiver never holds up the
+ * camera.
+ */
+public class FrameStreamer implements FrameConsumer {
+
+    public static final String FORMAT_JPEG = "jpeg";
+    public static final String FORMAT_RGBA = "rgba";
+
+    private final String format;
+    private final long intervalMs;
+    private final int maxEdge;
+    private final int quality;
+    private final int queueDepth;
+    private final FrameStreamCallback callback;
+    private final ExecutorService workers;
+    private final ArrayDeque<Job> queue;
+    private final ArrayDeque<Job> free;
+    private final AtomicLong produced = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private long lastProducedAtMs = 0;
+    private volatile boolean running = true;
+
+    private static class Job {
+        byte[] nv21 = new byte[0];
+        int width;
+        int height;
+        int rotationDegrees;
+        long timestampNs;
+        long sequence;
+    }
+
+    public FrameStreamer(String format, int fps, int maxEdge, int quality, int workerCount, int queueDepth, FrameStreamCallback callback) {
+        this.format = format;
+        this.intervalMs = 1000L / fps;
+        this.maxEdge = maxEdge;
+        this.quality = quality;
+        this.queueDepth = queueDepth;
+        this.callback = callback;
+        queue = new ArrayDeque<>(queueDepth);
+        // One buffer per queued frame, per worker and for the frame being copied
+        int poolSize = queueDepth + workerCount + 1;
+        free = new ArrayDeque<>(poolSize);
+        for (int i = 0; i < poolSize; i++) {
+            free.add(new Job());
+        }
+        workers = Executors.newFixedThreadPool(workerCount, runnable -> new Thread(runnable, "SimpleCameraPreview-stream"));
+        for (int i = 0; i < workerCount; i++) {
+            workers.execute(this::work);
+        }
+    }
+
+    @Override
+    public boolean wantsFrame(long nowMs) {
+        return running && nowMs - lastProducedAtMs >= intervalMs;
+    }
+
+    @Override
+    public void onFrame(FrameAnalyzer.Frame frame) {
+        lastProducedAtMs = frame.getReceivedAtMs();
+        long sequence = produced.incrementAndGet();
+        Job job;
+        synchronized (this) {
+            job = free.poll();
+            if (job == null) {
+                job = queue.poll();
+                if (job == null) {
+                    // Every buffer is being encoded
+                    dropped.incrementAndGet();
+                    return;
+                }
+                dropped.incrementAndGet();
+            }
+        }
+
+        scale(frame, job);
+        job.sequence = sequence;
+        synchronized (this) {
+            if (queue.size() >= queueDepth) {
+                free.add(queue.poll());
+                dropped.incrementAndGet();
+            }
+            queue.add(job);
+            notifyAll();
+        }
+    }
+
+    /**
+     * Stops the workers, frames still queued are dropped.
+     */
+    public void stop() {
+        running = false;
+        synchronized (this) {
+            dropped.addAndGet(queue.size());
+            free.addAll(queue);
+            queue.clear();
+            notifyAll();
+        }
+        workers.shutdown();
+    }
+
+    public JSONObject getCounters() {
+        JSONObject counters = new JSONObject();
+        try {
+            counters.put("produced", produced.get());
+            counters.put("dropped", dropped.get());
+            counters.put("delivered", delivered.get());
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        return counters;
+    }
+
+    private void work() {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        while (true) {
+            Job job;
+            synchronized (this) {
+                while (running && queue.isEmpty()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (!running) {
+                    return;
+                }
+                job = queue.poll();
+            }
+
+            byte[] data;
+            try {
+                data = encode(job, compressed);
+            } catch (IOException e) {
+                e.printStackTrace();
+                data = null;
+            }
+            boolean deliver = data != null && running;
+            if (deliver) {
+                delivered.incrementAndGet();
+            } else {
+                dropped.incrementAndGet();
+            }
+            JSONObject metadata = deliver ? getMetadata(job) : null;
+            synchronized (this) {
+                free.add(job);
+            }
+            if (deliver) {
+                callback.onFrame(data, metadata);
+            }
+        }
+    }
+
+    private byte[] encode(Job job, ByteArrayOutputStream compressed) throws IOException {
+        if (FORMAT_RGBA.equals(format)) {
+            // Handed over to the bridge, so every frame gets its own array
+            byte[] rgba = new byte[job.width * job.height * 4];
+            YuvConverter.nv21ToRgba(job.nv21, job.width, job.height, rgba);
+            return rgba;
+        }
+
+        compressed.reset();
+        YuvImage yuvImage = new YuvImage(job.nv21, ImageFormat.NV21, job.width, job.height, null);
+        if (!yuvImage.compressToJpeg(new Rect(0, 0, job.width, job.height), quality, compressed)) {
+            throw new IOException("NV21 compression failed");
+        }
+        ByteArrayOutputStream spliced = new ByteArrayOutputStream(compressed.size() + 64);
+        ExifSplicer.splice(ByteBuffer.wrap(compressed.toByteArray()), ExifSplicer.orientationFromRotation(job.rotationDegrees), null, spliced);
+        return spliced.toByteArray();
+    }
+
+    private JSONObject getMetadata(Job job) {
+        JSONObject metadata = getCounters();
+        try {
+            metadata.put("format", format);
+            metadata.put("width", job.width);
+            metadata.put("height", job.height);
+            metadata.put("rotationDegrees", job.rotationDegrees);
+            metadata.put("timestampNs", job.timestampNs);
+            metadata.put("sequence", job.sequence);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        return metadata;
+    }
+
+    /**
+     * Nearest neighbour scales the frame into the job's NV21 buffer, keeping both sides even.
+     */
+    private void scale(FrameAnalyzer.Frame frame, Job job) {
+        int sourceWidth = frame.getWidth();
+        int sourceHeight = frame.getHeight();
+        float scale = Math.min(1f, (float) maxEdge / Math.max(sourceWidth, sourceHeight));
+        int width = Math.max(2, Math.round(sourceWidth * scale) & ~1);
+        int height = Math.max(2, Math.round(sourceHeight * scale) & ~1);
+        int size = width * height * 3 / 2;
+        if (job.nv21.length != size) {
+            job.nv21 = new byte[size];
+        }
+        job.width = width;
+        job.height = height;
+        job.rotationDegrees = frame.getRotationDegrees();
+        job.timestampNs = frame.getTimestampNs();
+
+        byte[] y = frame.getY();
+        byte[] nv21 = job.nv21;
+        int out = 0;
+        for (int row = 0; row < height; row++) {
+            int sourceOffset = (row * sourceHeight / height) * sourceWidth;
+            for (int col = 0; col < width; col++) {
+                nv21[out++] = y[sourceOffset + col * sourceWidth / width];
+            }
+        }
+
+        ImageProxy.PlaneProxy[] planes = frame.getImage().getPlanes();
+        ByteBuffer u = planes[1].getBuffer();
+        ByteBuffer v = planes[2].getBuffer();
+        int rowStride = planes[1].getRowStride();
+        int pixelStride = planes[1].getPixelStride();
+        int chromaWidth = width / 2;
+        int chromaHeight = height / 2;
+        int sourceChromaWidth = sourceWidth / 2;
+        int sourceChromaHeight = sourceHeight / 2;
+        for (int row = 0; row < chromaHeight; row++) {
+            int sourceOffset = (row * sourceChromaHeight / chromaHeight) * rowStride;
+            for (int col = 0; col < chromaWidth; col++) {
+                int position = sourceOffset + (col * sourceChromaWidth / chromaWidth) * pixelStride;
+                nv21[out++] = v.get(position);
+                nv21[out++] = u.get(position);
+            }
+        }
+    }
+}
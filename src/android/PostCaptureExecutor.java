@@ -0,0 +1,75 @@
+package com.spoon.simplecamerapreview;
+
+import androidx.annotation.NonNull;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor for the file work that follows a capture (EXIF, thumbnails, renditions), keeping it off the main thread.
+ * Its queue is unbounded so that a burst of captures never runs this work on the submitting thread, which is the
+ * main thread for CameraX callbacks; the queue depth is tracked instead and reported with the capture timings.
+ */
+public class PostCaptureExecutor implements Executor {
+
+    private static final int THREAD_COUNT = 2;
+    private static PostCaptureExecutor instance;
+
+    private final ThreadPoolExecutor executor;
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicInteger peakQueueDepth = new AtomicInteger();
+
+    private PostCaptureExecutor() {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(
+                THREAD_COUNT,
+                THREAD_COUNT,
+                30,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "SimpleCameraPreview-io-" + threadCount.incrementAndGet());
+                    thread.setPriority(Thread.NORM_PRIORITY - 1);
+                    return thread;
+                }
+        );
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public static synchronized PostCaptureExecutor getInstance() {
+        if (instance == null) {
+            instance = new PostCaptureExecutor();
+        }
+        return instance;
+    }
+
+    @Override
+    public void execute(@NonNull Runnable task) {
+        int depth = queueDepth.incrementAndGet();
+        int peak = peakQueueDepth.get();
+        while (depth > peak && !peakQueueDepth.compareAndSet(peak, depth)) {
+            peak = peakQueueDepth.get();
+        }
+
+        executor.execute(() -> {
+            try {
+                task.run();
+            } finally {
+                queueDepth.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Number of tasks waiting or running.
+     */
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    public int getPeakQueueDepth() {
+        return peakQueueDepth.get();
+    }
+}
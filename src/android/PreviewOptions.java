@@ -0,0 +1,69 @@
+package com.spoon.simplecamerapreview;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parsing of the preview options shared by enable and switchCameraTo. Values come in as the strings the JS layer
+ * sent, where a missing option may also arrive as "null".
+ * This class has no Android dependencies so it can be exercised on the JVM.
+ */
+public final class PreviewOptions {
+
+    public static final double ASPECT_RATIO_3_BY_4 = 3.0 / 4.0;
+    public static final double ASPECT_RATIO_9_BY_16 = 9.0 / 16.0;
+    public static final double DEFAULT_ASPECT_RATIO = ASPECT_RATIO_3_BY_4;
+    public static final String DEFAULT_LENS = "default";
+
+    private static final Pattern ASPECT_RATIO_PATTERN = Pattern.compile("([1-9]\\d*):([1-9]\\d*)");
+
+    private PreviewOptions() {
+    }
+
+    /**
+     * Parses "width:height" into width / height, for example "3:4" into 0.75. Anything else gives the 3:4 default.
+     */
+    public static double parseAspectRatio(String value) {
+        if (isMissing(value)) {
+            return DEFAULT_ASPECT_RATIO;
+        }
+        Matcher matcher = ASPECT_RATIO_PATTERN.matcher(value);
+        if (!matcher.matches()) {
+            return DEFAULT_ASPECT_RATIO;
+        }
+        return Double.parseDouble(matcher.group(1)) / Double.parseDouble(matcher.group(2));
+    }
+
+    /**
+     * Parses the target width in pixels, 0 when it is missing or not a number.
+     */
+    public static int parseTargetSize(String value) {
+        if (isMissing(value)) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    public static String parseLens(String value) {
+        return isMissing(value) || value.isEmpty() ? DEFAULT_LENS : value;
+    }
+
+    public static String parseResolutionPolicy(String value) {
+        return isMissing(value) ? ResolutionPolicy.DEFAULT : value;
+    }
+
+    /**
+     * Whether the ratio is closer to 3:4 than to 9:16, the two sensor aspect ratios CameraX selects between.
+     */
+    public static boolean isCloserTo3By4(double aspectRatio) {
+        return Math.abs(aspectRatio - ASPECT_RATIO_3_BY_4) <= Math.abs(aspectRatio - ASPECT_RATIO_9_BY_16);
+    }
+
+    private static boolean isMissing(String value) {
+        return value == null || value.equals("null");
+    }
+}
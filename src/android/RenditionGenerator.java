@@ -0,0 +1,172 @@
+package com.spoon.simplecamerapreview;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.net.Uri;
+import android.util.Log;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Writes the downscaled copies of a captured JPEG configured with the renditions option of enable.
+ * The JPEG is decoded once, subsampled for the largest rendition, and every rendition is scaled from that bitmap.
+ * Bitmaps come from BitmapPool so that consecutive captures do not allocate new ones.
+ */
+public class RenditionGenerator {
+
+    private static final String TAG = "SimpleCameraPreview";
+    private static final int DEFAULT_QUALITY = 85;
+    private static final Pattern NAME_PATTERN = Pattern.compile("[A-Za-z0-9_-]+");
+    private static final Paint SCALE_PAINT = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    public static class Rendition {
+        private final String name;
+        private final int maxEdge;
+        private final int quality;
+
+        public Rendition(String name, int maxEdge, int quality) {
+            this.name = name;
+            this.maxEdge = maxEdge;
+            this.quality = quality;
+        }
+    }
+
+    private final List<Rendition> renditions;
+    private final int largestEdge;
+
+    private RenditionGenerator(List<Rendition> renditions) {
+        this.renditions = renditions;
+        int edge = 0;
+        for (Rendition rendition : renditions) {
+            edge = Math.max(edge, rendition.maxEdge);
+        }
+        this.largestEdge = edge;
+    }
+
+    /**
+     * Parses [{name, maxEdge, quality}], returning null when no rendition is configured.
+     * Throws an IllegalArgumentException describing the first invalid entry.
+     */
+    public static RenditionGenerator fromJson(JSONArray options) {
+        if (options == null || options.length() == 0) {
+            return null;
+        }
+
+        List<Rendition> renditions = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < options.length(); i++) {
+            JSONObject option = options.optJSONObject(i);
+            if (option == null) {
+                throw new IllegalArgumentException("Rendition " + i + " must be an object");
+            }
+            String name = option.optString("name", "");
+            int maxEdge = option.optInt("maxEdge", 0);
+            int quality = option.optInt("quality", DEFAULT_QUALITY);
+            if (!NAME_PATTERN.matcher(name).matches() || names.contains(name)) {
+                throw new IllegalArgumentException("Rendition " + i + " needs a unique name made of letters, digits, - or _");
+            }
+            if (maxEdge <= 0) {
+                throw new IllegalArgumentException("Rendition " + name + " needs a positive maxEdge");
+            }
+            if (quality < 1 || quality > 100) {
+                throw new IllegalArgumentException("Rendition " + name + " quality must be between 1 and 100");
+            }
+            names.add(name);
+            renditions.add(new Rendition(name, maxEdge, quality));
+        }
+        return new RenditionGenerator(Collections.unmodifiableList(renditions));
+    }
+
+    /**
+     * Writes every rendition of jpegFile next to it as <name>_<rendition>.jpg carrying the given Exif orientation,
+     * and returns their URIs keyed by rendition name. Runs on the calling thread.
+     */
+    public JSONObject generate(File jpegFile, int orientation) throws IOException {
+        BitmapFactory.Options boundsOptions = new BitmapFactory.Options();
+        boundsOptions.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(jpegFile.getAbsolutePath(), boundsOptions);
+        if (boundsOptions.outWidth <= 0 || boundsOptions.outHeight <= 0) {
+            throw new IOException("Unable to read image size");
+        }
+
+        Bitmap decoded = decode(jpegFile, boundsOptions.outWidth, boundsOptions.outHeight);
+        String baseName = jpegFile.getName().replaceFirst("\\.jpg$", "");
+        JSONObject paths = new JSONObject();
+        try {
+            for (Rendition rendition : renditions) {
+                File renditionFile = new File(jpegFile.getParentFile(), baseName + "_" + rendition.name + ".jpg");
+                write(decoded, rendition, orientation, renditionFile);
+                paths.put(rendition.name, Uri.fromFile(renditionFile).toString());
+            }
+        } catch (JSONException e) {
+            throw new IOException(e);
+        } finally {
+            BitmapPool.release(decoded);
+        }
+        return paths;
+    }
+
+    private Bitmap decode(File jpegFile, int width, int height) throws IOException {
+        BitmapFactory.Options decodeOptions = new BitmapFactory.Options();
+        decodeOptions.inSampleSize = 1;
+        while (Math.max(width, height) / (decodeOptions.inSampleSize * 2) >= largestEdge) {
+            decodeOptions.inSampleSize *= 2;
+        }
+        decodeOptions.inMutable = true;
+        int decodedWidth = (width + decodeOptions.inSampleSize - 1) / decodeOptions.inSampleSize;
+        int decodedHeight = (height + decodeOptions.inSampleSize - 1) / decodeOptions.inSampleSize;
+        decodeOptions.inBitmap = BitmapPool.acquire(decodedWidth, decodedHeight);
+
+        Bitmap decoded;
+        try {
+            decoded = BitmapFactory.decodeFile(jpegFile.getAbsolutePath(), decodeOptions);
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Unable to reuse bitmap for renditions: " + e.getMessage());
+            BitmapPool.release(decodeOptions.inBitmap);
+            decodeOptions.inBitmap = null;
+            decoded = BitmapFactory.decodeFile(jpegFile.getAbsolutePath(), decodeOptions);
+        }
+        if (decoded == null) {
+            BitmapPool.release(decodeOptions.inBitmap);
+            throw new IOException("Unable to decode image");
+        }
+        return decoded;
+    }
+
+    private static void write(Bitmap decoded, Rendition rendition, int orientation, File renditionFile) throws IOException {
+        float scale = Math.min(1f, (float) rendition.maxEdge / Math.max(decoded.getWidth(), decoded.getHeight()));
+        Bitmap scaled = decoded;
+        if (scale < 1) {
+            scaled = BitmapPool.acquire(Math.max(1, Math.round(decoded.getWidth() * scale)), Math.max(1, Math.round(decoded.getHeight() * scale)));
+            new Canvas(scaled).drawBitmap(decoded, null, new Rect(0, 0, scaled.getWidth(), scaled.getHeight()), SCALE_PAINT);
+        }
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try {
+            scaled.compress(Bitmap.CompressFormat.JPEG, rendition.quality, compressed);
+        } finally {
+            if (scaled != decoded) {
+                BitmapPool.release(scaled);
+            }
+        }
+
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(renditionFile))) {
+            ExifSplicer.splice(ByteBuffer.wrap(compressed.toByteArray()), orientation, null, out);
+        }
+    }
+}
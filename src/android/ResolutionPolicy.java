@@ -0,0 +1,164 @@
+package com.spoon.simplecamerapreview;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Scores JPEG output sizes and picks the best one for a requested aspect ratio and target width.
+ * Lower scores are better. max-quality does not score: it keeps the selection the plugin made before policies
+ * existed, so apps that do not choose a policy keep their photo size.
+ * This class has no Android dependencies so it can be exercised on the JVM.
+ */
+public class ResolutionPolicy {
+
+    public static final String FASTEST = "fastest";
+    public static final String BALANCED = "balanced";
+    public static final String MAX_QUALITY = "max-quality";
+    public static final String DEFAULT = MAX_QUALITY;
+
+    private static final double ASPECT_RATIO_TOLERANCE = 0.01;
+    private static final double STALL_DURATION_UNIT_NS = 100_000_000.0;
+    private static final double FRAME_DURATION_UNIT_NS = 33_333_333.0;
+
+    private final String name;
+    private final double ratioWeight;
+    private final double sizeWeight;
+    private final double stallWeight;
+    private final double frameDurationWeight;
+
+    public static class Candidate {
+        private final int width;
+        private final int height;
+        private final long stallDurationNs;
+        private final long minFrameDurationNs;
+
+        public Candidate(int width, int height, long stallDurationNs, long minFrameDurationNs) {
+            this.width = width;
+            this.height = height;
+            this.stallDurationNs = stallDurationNs;
+            this.minFrameDurationNs = minFrameDurationNs;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public long getStallDurationNs() {
+            return stallDurationNs;
+        }
+
+        public long getMinFrameDurationNs() {
+            return minFrameDurationNs;
+        }
+
+        public long getPixels() {
+            return (long) width * height;
+        }
+    }
+
+    public ResolutionPolicy(String name, double ratioWeight, double sizeWeight, double stallWeight, double frameDurationWeight) {
+        this.name = name;
+        this.ratioWeight = ratioWeight;
+        this.sizeWeight = sizeWeight;
+        this.stallWeight = stallWeight;
+        this.frameDurationWeight = frameDurationWeight;
+    }
+
+    public static ResolutionPolicy fromName(String name) {
+        if (FASTEST.equals(name)) {
+            return new ResolutionPolicy(FASTEST, 10.0, 0.25, 2.0, 1.0);
+        }
+        if (BALANCED.equals(name)) {
+            return new ResolutionPolicy(BALANCED, 10.0, 1.0, 0.5, 0.25);
+        }
+        return new ResolutionPolicy(MAX_QUALITY, 10.0, 1.0, 0.0, 0.0);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the best candidate, or null when there is nothing to choose from.
+     * Sizes matching the aspect ratio (height / width) within 0.01 are preferred; when none match every size is scored.
+     * A target width of zero or less asks for the largest output. max-quality takes the widest size, or the one whose
+     * width is closest to the target, and the first one listed on ties.
+     */
+    public Candidate select(List<Candidate> candidates, double aspectRatio, int targetWidth) {
+        if (candidates == null || candidates.isEmpty()) {
+            return null;
+        }
+
+        List<Candidate> matchingCandidates = new ArrayList<>();
+        for (Candidate candidate : candidates) {
+            if (ratioError(candidate, aspectRatio) < ASPECT_RATIO_TOLERANCE) {
+                matchingCandidates.add(candidate);
+            }
+        }
+        if (matchingCandidates.isEmpty()) {
+            matchingCandidates = candidates;
+        }
+        if (MAX_QUALITY.equals(name)) {
+            return targetWidth > 0 ? selectClosestWidth(matchingCandidates, targetWidth) : selectWidest(matchingCandidates);
+        }
+
+        long maxPixels = 1;
+        for (Candidate candidate : matchingCandidates) {
+            maxPixels = Math.max(maxPixels, candidate.getPixels());
+        }
+
+        Candidate bestMatch = null;
+        double bestScore = Double.MAX_VALUE;
+        for (Candidate candidate : matchingCandidates) {
+            double score = score(candidate, aspectRatio, targetWidth, maxPixels);
+            if (score < bestScore
+                    || (score == bestScore && candidate.getStallDurationNs() < bestMatch.getStallDurationNs())) {
+                bestScore = score;
+                bestMatch = candidate;
+            }
+        }
+        return bestMatch;
+    }
+
+    public double score(Candidate candidate, double aspectRatio, int targetWidth, long maxPixels) {
+        double sizeError = targetWidth > 0
+                ? Math.abs(candidate.getWidth() - targetWidth) / (double) targetWidth
+                : 1.0 - candidate.getPixels() / (double) maxPixels;
+
+        return ratioWeight * ratioError(candidate, aspectRatio)
+                + sizeWeight * sizeError
+                + stallWeight * (candidate.getStallDurationNs() / STALL_DURATION_UNIT_NS)
+                + frameDurationWeight * (candidate.getMinFrameDurationNs() / FRAME_DURATION_UNIT_NS);
+    }
+
+    private static Candidate selectWidest(List<Candidate> candidates) {
+        Candidate widest = candidates.get(0);
+        for (Candidate candidate : candidates) {
+            if (candidate.getWidth() > widest.getWidth()) {
+                widest = candidate;
+            }
+        }
+        return widest;
+    }
+
+    private static Candidate selectClosestWidth(List<Candidate> candidates, int targetWidth) {
+        Candidate closest = candidates.get(0);
+        int smallestDifference = Math.abs(closest.getWidth() - targetWidth);
+        for (Candidate candidate : candidates) {
+            int difference = Math.abs(candidate.getWidth() - targetWidth);
+            if (difference < smallestDifference) {
+                smallestDifference = difference;
+                closest = candidate;
+            }
+        }
+        return closest;
+    }
+
+    private static double ratioError(Candidate candidate, double aspectRatio) {
+        return Math.abs((double) candidate.getHeight() / candidate.getWidth() - aspectRatio);
+    }
+}
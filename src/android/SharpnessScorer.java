@@ -0,0 +1,107 @@
+package com.spoon.simplecamerapreview;
+
+/**
+ * Scores how sharp and how still a Y plane is. The plane is box-downsampled by an integer factor, sharpness is the
+ * variance of the 4-neighbour Laplacian of the downsampled image and motion is the mean absolute difference with
+ * the previous frame scored, both on a 0-255 luma scale. Buffers are only reallocated when the frame size changes.
+ * This class has no Android dependencies so it can be exercised on the JVM.
+ */
+public final class SharpnessScorer {
+
+    private final int factor;
+    private int[] current = new int[0];
+    private int[] previous = new int[0];
+    private int scaledWidth;
+    private int scaledHeight;
+    private boolean hasPrevious = false;
+    private double sharpness;
+    private double motion;
+
+    public SharpnessScorer(int factor) {
+        this.factor = Math.max(1, factor);
+    }
+
+    /**
+     * Scores a width x height plane stored with rowStride bytes per row and returns its sharpness.
+     */
+    public double score(byte[] y, int width, int height, int rowStride) {
+        int w = width / factor;
+        int h = height / factor;
+        if (w != scaledWidth || h != scaledHeight) {
+            scaledWidth = w;
+            scaledHeight = h;
+            current = new int[w * h];
+            previous = new int[w * h];
+            hasPrevious = false;
+        }
+
+        downsample(y, rowStride);
+        sharpness = laplacianVariance(current, w, h);
+        motion = hasPrevious ? meanAbsoluteDifference(current, previous) : 0;
+
+        int[] swap = previous;
+        previous = current;
+        current = swap;
+        hasPrevious = true;
+        return sharpness;
+    }
+
+    /**
+     * Forgets the previous frame, so the next score reports no motion.
+     */
+    public void reset() {
+        hasPrevious = false;
+    }
+
+    public double getSharpness() {
+        return sharpness;
+    }
+
+    public double getMotion() {
+        return motion;
+    }
+
+    private void downsample(byte[] y, int rowStride) {
+        int area = factor * factor;
+        for (int sy = 0; sy < scaledHeight; sy++) {
+            for (int sx = 0; sx < scaledWidth; sx++) {
+                int sum = 0;
+                int rowOffset = sy * factor * rowStride + sx * factor;
+                for (int dy = 0; dy < factor; dy++) {
+                    int offset = rowOffset + dy * rowStride;
+                    for (int dx = 0; dx < factor; dx++) {
+                        sum += y[offset + dx] & 0xFF;
+                    }
+                }
+                current[sy * scaledWidth + sx] = sum / area;
+            }
+        }
+    }
+
+    static double laplacianVariance(int[] pixels, int width, int height) {
+        if (width < 3 || height < 3) {
+            return 0;
+        }
+        long sum = 0;
+        long sumOfSquares = 0;
+        for (int row = 1; row < height - 1; row++) {
+            int offset = row * width;
+            for (int i = offset + 1; i < offset + width - 1; i++) {
+                int laplacian = 4 * pixels[i] - pixels[i - 1] - pixels[i + 1] - pixels[i - width] - pixels[i + width];
+                sum += laplacian;
+                sumOfSquares += (long) laplacian * laplacian;
+            }
+        }
+        long count = (long) (width - 2) * (height - 2);
+        double mean = (double) sum / count;
+        return (double) sumOfSquares / count - mean * mean;
+    }
+
+    static double meanAbsoluteDifference(int[] a, int[] b) {
+        long sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += Math.abs(a[i] - b[i]);
+        }
+        return a.length > 0 ? (double) sum / a.length : 0;
+    }
+}
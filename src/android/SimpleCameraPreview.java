@@ -11,6 +11,9 @@ import android.location.LocationListener;
 import android.location.LocationManager;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.provider.Settings;
 import android.util.DisplayMetrics;
 import android.util.Log;
@@ -18,6 +21,7 @@ import android.view.ViewGroup;
 import android.view.ViewParent;
 import android.widget.FrameLayout;
 import androidx.camera.core.CameraSelector;
+import androidx.camera.lifecycle.ProcessCameraProvider;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 import org.apache.cordova.CallbackContext;
@@ -27,16 +31,18 @@ import org.apache.cordova.PluginResult;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
-import java.util.concurrent.FutureTask;
-import java.util.concurrent.RunnableFuture;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
 
 public class SimpleCameraPreview extends CordovaPlugin {
 
     private CameraPreviewFragment fragment;
     private JSONObject options;
     private CallbackContext enableCallbackContext;
+    private long permissionRequestedAt = 0;
     private LocationManager locationManager;
     private LocationListener mLocationCallback;
     private ViewParent webViewParent;
@@ -45,49 +51,204 @@ public class SimpleCameraPreview extends CordovaPlugin {
     private static final int REQUEST_CODE_PERMISSIONS = 4582679;
     private static final int VIDEO_REQUEST_CODE_PERMISSIONS = 200;
     private static final String REQUIRED_PERMISSION = Manifest.permission.CAMERA;
-    private static final double DEFAULT_ASPECT_RATIO = 3.0 / 4.0;
+    private static final int MAX_BURST_COUNT = 50;
+    private static final int MAX_BURST_IN_FLIGHT = 4;
+    private static final long BURST_PICTURE_TIMEOUT_MS = 2000;
+    private static final String STORAGE_QUOTA_PREFERENCE = "SimpleCameraPreviewStorageQuotaMB";
+    private static final String TRACE_PREFERENCE = "SimpleCameraPreviewTrace";
+    private static final int DEFAULT_ANALYSIS_WIDTH = 640;
+    private static final int DEFAULT_THUMBNAIL_MAX_EDGE = 512;
+    private static final int MAX_STREAM_FPS = 30;
+    private static final int MAX_STREAM_WORKERS = 4;
+    private static final double DEFAULT_AUTO_CAPTURE_THRESHOLD = 60;
+    private static final double DEFAULT_AUTO_CAPTURE_MAX_MOTION = 4;
+    private static final int DEFAULT_AUTO_CAPTURE_STABLE_FRAMES = 3;
+    private static final int DEFAULT_AUTO_CAPTURE_TIMEOUT_MS = 5000;
+    private static final String CAPTURE_OUTPUT_BYTES = "bytes";
+    private static final int DEFAULT_CAPTURE_MAX_BYTES = 4 * 1024 * 1024;
+    private static final int DEFAULT_BEST_SHOT_WINDOW_MS = 500;
+    private static final String PREWARM_PREFERENCE = "SimpleCameraPreviewPrewarm";
+    private static final String PREWARM_LAZY = "lazy";
+    private static final String TAG = "SimpleCameraPreview";
+    private static final String CAMERA_DIRECTIONS_PREFERENCE = "SimpleCameraPreviewCameraDirections";
+    private static final String CAMERA_DIRECTIONS_BOTH = "both";
+    private static final EnumSet<CameraCommandScheduler.State> OPEN = EnumSet.of(CameraCommandScheduler.State.OPEN);
+    private static final EnumSet<CameraCommandScheduler.State> CLOSED = EnumSet.of(CameraCommandScheduler.State.CLOSED);
+    private final CameraCommandScheduler scheduler = new CameraCommandScheduler();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private FrameStatsReporter frameStatsReporter;
+    private FrameStreamer frameStreamer;
+    private AutoCapture autoCapture;
+    private CallbackContext autoCaptureContext;
+    private Runnable autoCaptureTimeout;
 
     public SimpleCameraPreview() {
         super();
     }
 
+    @Override
+    protected void pluginInitialize() {
+        super.pluginInitialize();
+        CameraCapabilityCache.warmUp(cordova.getActivity().getApplicationContext());
+        CameraTrace.setEnabled(cordova.getActivity(), preferences.getBoolean(TRACE_PREFERENCE, false));
+        long storageQuotaBytes = preferences.getInteger(STORAGE_QUOTA_PREFERENCE, 0) * 1024L * 1024L;
+        cordova.getThreadPool().execute(() -> CaptureStore.getInstance(cordova.getActivity()).setQuotaBytes(storageQuotaBytes));
+        String cameraDirections = preferences.getString(CAMERA_DIRECTIONS_PREFERENCE, CAMERA_DIRECTIONS_BOTH).toLowerCase(Locale.US);
+        if ("back".equals(cameraDirections)) {
+            CameraProviderLoader.getInstance().limitToLensFacing(CameraSelector.LENS_FACING_BACK);
+        } else if ("front".equals(cameraDirections)) {
+            CameraProviderLoader.getInstance().limitToLensFacing(CameraSelector.LENS_FACING_FRONT);
+        } else if (!CAMERA_DIRECTIONS_BOTH.equals(cameraDirections)) {
+            Log.w(TAG, CAMERA_DIRECTIONS_PREFERENCE + " must be back, front or both, ignoring " + cameraDirections);
+        }
+        if (!PREWARM_LAZY.equals(preferences.getString(PREWARM_PREFERENCE, "onload"))) {
+            CameraProviderLoader.getInstance().prewarm(cordova.getActivity());
+        }
+    }
+
     @Override
     public boolean execute(String action, JSONArray args, CallbackContext callbackContext) {
         try {
             switch (action) {
 
                 case "enable":
-                    return enable((JSONObject) args.get(0), callbackContext);
+                    return submitEnable((JSONObject) args.get(0), callbackContext);
 
                 case "disable":
-                    return disable(callbackContext);
+                    scheduler.submit(action, null, OPEN, "Camera already closed", callbackContext,
+                            (Runnable done) -> disable(callbackContext, done));
+                    return true;
 
                 case "capture":
-                    return capture(args.getBoolean(0), callbackContext);
+                    boolean useFlash = args.getBoolean(0);
+                    JSONObject captureOptions = args.optJSONObject(1);
+                    scheduler.submit(action, null, OPEN, "Camera is closed", callbackContext,
+                            (Runnable done) -> capture(useFlash, captureOptions, callbackContext, done));
+                    return true;
+
+                case "captureBurst":
+                    JSONObject burstOptions = args.optJSONObject(0);
+                    scheduler.submit(action, null, OPEN, "Camera is closed", callbackContext, getBurstTimeoutMs(burstOptions),
+                            (Runnable done) -> captureBurst(burstOptions, callbackContext, done));
+                    return true;
 
                 case "torchSwitch":
-                    return torchSwitch(args.getBoolean(0), callbackContext);
+                    boolean torchState = args.getBoolean(0);
+                    scheduler.submit(action, action, OPEN, "Camera is closed, cannot switch " + torchState + " torch", callbackContext,
+                            (Runnable done) -> torchSwitch(torchState, callbackContext, done));
+                    return true;
 
                 case "initVideoCallback":
                     return initVideoCallback(callbackContext);
 
                 case "startVideoCapture":
-                    return startVideoCapture((JSONObject) args.get(0), callbackContext);
+                    JSONObject videoOptions = (JSONObject) args.get(0);
+                    scheduler.submit(action, null, OPEN, "Camera is closed", callbackContext,
+                            (Runnable done) -> startVideoCapture(videoOptions, callbackContext, done));
+                    return true;
 
                 case "stopVideoCapture":
-                    return stopVideoCapture(callbackContext);
+                    scheduler.submit(action, null, OPEN, "Camera is closed", callbackContext,
+                            (Runnable done) -> stopVideoCapture(callbackContext, done));
+                    return true;
 
                 case "deviceHasFlash":
-                    return deviceHasFlash(callbackContext);
+                    scheduler.submit(action, null, OPEN, "Camera is closed", callbackContext,
+                            (Runnable done) -> deviceHasFlash(callbackContext, done));
+                    return true;
 
                 case "deviceHasUltraWideCamera":
-                    return deviceHasUltraWideCamera(callbackContext);
+                    scheduler.submit(action, null, OPEN, "Camera is closed", callbackContext,
+                            (Runnable done) -> deviceHasUltraWideCamera(callbackContext, done));
+                    return true;
 
                 case "deviceHasFrontCamera":
-                    return deviceHasFrontCamera(callbackContext);
+                    scheduler.submit(action, null, OPEN, "Camera is closed", callbackContext,
+                            (Runnable done) -> deviceHasFrontCamera(callbackContext, done));
+                    return true;
 
                 case "switchCameraTo":
-                    return switchCameraTo((JSONObject) args.get(0), callbackContext);
+                    JSONObject switchOptions = (JSONObject) args.get(0);
+                    // Only the last of several queued switches is applied
+                    scheduler.submit(action, action, OPEN, "Camera is closed, cannot switch camera", callbackContext,
+                            (Runnable done) -> switchCameraTo(switchOptions, callbackContext, done));
+                    return true;
+
+                case "prewarm":
+                    return prewarm(args.optJSONObject(0), callbackContext);
+
+                case "startAnalysis":
+                    JSONObject analysisOptions = args.optJSONObject(0);
+                    scheduler.submit(action, null, OPEN, "Camera is closed", callbackContext,
+                            (Runnable done) -> startAnalysis(analysisOptions, callbackContext, done));
+                    return true;
+
+                case "stopAnalysis":
+                    scheduler.submit(action, null, OPEN, "Camera is closed", callbackContext,
+                            (Runnable done) -> stopAnalysis(callbackContext, done));
+                    return true;
+
+                case "startFrameStream":
+                    JSONObject streamOptions = args.optJSONObject(0);
+                    scheduler.submit(action, null, OPEN, "Camera is closed", callbackContext,
+                            (Runnable done) -> startFrameStream(streamOptions, callbackContext, done));
+                    return true;
+
+                case "stopFrameStream":
+                    scheduler.submit(action, null, OPEN, "Camera is closed", callbackContext,
+                            (Runnable done) -> stopFrameStream(callbackContext, done));
+                    return true;
+
+                case "autoCapture":
+                    JSONObject autoCaptureOptions = args.optJSONObject(0);
+                    scheduler.submit(action, null, OPEN, "Camera is closed", callbackContext,
+                            (Runnable done) -> autoCapture(autoCaptureOptions, callbackContext, done));
+                    return true;
+
+                case "listCaptures":
+                    JSONObject listOptions = args.optJSONObject(0);
+                    cordova.getThreadPool().execute(() -> listCaptures(listOptions, callbackContext));
+                    return true;
+
+                case "deleteCaptures":
+                    JSONArray deletePaths = args.optJSONArray(0);
+                    cordova.getThreadPool().execute(() -> {
+                        int deleted = CaptureStore.getInstance(cordova.getActivity()).delete(deletePaths);
+                        callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, deleted));
+                    });
+                    return true;
+
+                case "acknowledgeCaptures":
+                    JSONArray acknowledgePaths = args.optJSONArray(0);
+                    cordova.getThreadPool().execute(() -> {
+                        int acknowledged = CaptureStore.getInstance(cordova.getActivity()).acknowledge(acknowledgePaths);
+                        callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, acknowledged));
+                    });
+                    return true;
+
+                case "getCommandTimings":
+                    callbackContext.success(scheduler.getTimings());
+                    return true;
+
+                case "getMetrics":
+                    callbackContext.success(CameraMetrics.toJson());
+                    return true;
+
+                case "resetMetrics":
+                    CameraMetrics.reset();
+                    callbackContext.success();
+                    return true;
+
+                case "dumpTrace":
+                    cordova.getThreadPool().execute(() -> {
+                        try {
+                            callbackContext.success(CameraTrace.dump());
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                            callbackContext.error("Unable to read trace: " + e.getMessage());
+                        }
+                    });
+                    return true;
                 default:
                     break;
             }
@@ -100,6 +261,253 @@ public class SimpleCameraPreview extends CordovaPlugin {
         }
     }
 
+    private boolean prewarm(JSONObject options, CallbackContext callbackContext) {
+        int cameraDirection = CameraSessionConfig.parseDirection(options != null ? options.optString("direction", null) : null);
+        boolean warm = CameraProviderLoader.getInstance().isReady(cameraDirection);
+        CameraProviderLoader.getInstance().get(cordova.getActivity(), cameraDirection, (Exception err, ProcessCameraProvider cameraProvider) -> {
+            if (err != null) {
+                callbackContext.error("Unable to initialize camera provider: " + err.getMessage());
+                return;
+            }
+
+            JSONObject data = new JSONObject();
+            try {
+                data.put("warm", warm);
+                data.put("providerInitMs", CameraProviderLoader.getInstance().getInitDurationMs());
+            } catch (JSONException e) {
+                e.printStackTrace();
+                callbackContext.error("Cannot send prewarm data");
+                return;
+            }
+            callbackContext.success(data);
+        });
+        return true;
+    }
+
+    /**
+     * Streams luminance statistics of the analysis frames on a kept-alive callback, replacing any previous stream.
+     */
+    private void startAnalysis(JSONObject options, CallbackContext callbackContext, Runnable done) {
+        if (options == null) {
+            options = new JSONObject();
+        }
+        int intervalMs = options.optInt("intervalMs", 200);
+        int histogramBins = options.optInt("histogramBins", 16);
+        int targetWidth = options.optInt("targetWidth", DEFAULT_ANALYSIS_WIDTH);
+        if (intervalMs < 0 || histogramBins < 1 || histogramBins > FrameStatistics.BINS || FrameStatistics.BINS % histogramBins != 0) {
+            callbackContext.error("intervalMs cannot be negative and histogramBins must divide " + FrameStatistics.BINS);
+            done.run();
+            return;
+        }
+
+        if (frameStatsReporter != null) {
+            fragment.removeFrameConsumer(frameStatsReporter);
+        }
+        frameStatsReporter = new FrameStatsReporter(intervalMs, histogramBins, (JSONObject stats) -> {
+            PluginResult pluginResult = new PluginResult(PluginResult.Status.OK, stats);
+            pluginResult.setKeepCallback(true);
+            callbackContext.sendPluginResult(pluginResult);
+        });
+        FrameStatsReporter reporter = frameStatsReporter;
+        fragment.addFrameConsumer(reporter, targetWidth, (Exception err) -> {
+            if (err != null) {
+                if (frameStatsReporter == reporter) {
+                    frameStatsReporter = null;
+                }
+                callbackContext.error(err.getMessage());
+            }
+            done.run();
+        });
+    }
+
+    private void stopAnalysis(CallbackContext callbackContext, Runnable done) {
+        if (frameStatsReporter != null) {
+            fragment.removeFrameConsumer(frameStatsReporter);
+            frameStatsReporter = null;
+        }
+        callbackContext.success();
+        done.run();
+    }
+
+    /**
+     * Streams small JPEG or RGBA copies of the analysis frames on a kept-alive callback, replacing any previous
+     * stream. Each frame is sent as a multipart result of the bytes and their metadata.
+     */
+    private void startFrameStream(JSONObject options, CallbackContext callbackContext, Runnable done) {
+        if (options == null) {
+            options = new JSONObject();
+        }
+        String format = options.optString("format", FrameStreamer.FORMAT_JPEG);
+        int fps = options.optInt("fps", 10);
+        int maxEdge = options.optInt("maxEdge", 320);
+        int quality = options.optInt("quality", 70);
+        int workers = options.optInt("workers", 2);
+        int queueDepth = options.optInt("queueDepth", 2);
+        int targetWidth = options.optInt("targetWidth", DEFAULT_ANALYSIS_WIDTH);
+        if (!FrameStreamer.FORMAT_JPEG.equals(format) && !FrameStreamer.FORMAT_RGBA.equals(format)) {
+            callbackContext.error("format must be " + FrameStreamer.FORMAT_JPEG + " or " + FrameStreamer.FORMAT_RGBA);
+            done.run();
+            return;
+        }
+        if (fps < 1 || fps > MAX_STREAM_FPS || maxEdge < 16 || quality < 1 || quality > 100
+                || workers < 1 || workers > MAX_STREAM_WORKERS || queueDepth < 1) {
+            callbackContext.error("fps must be between 1 and " + MAX_STREAM_FPS + ", maxEdge at least 16, quality between 1 and 100, "
+                    + "workers between 1 and " + MAX_STREAM_WORKERS + " and queueDepth positive");
+            done.run();
+            return;
+        }
+
+        stopFrameStreamer();
+        FrameStreamer streamer = new FrameStreamer(format, fps, maxEdge, quality, workers, queueDepth, (byte[] data, JSONObject metadata) -> {
+            List<PluginResult> parts = new ArrayList<>();
+            parts.add(new PluginResult(PluginResult.Status.OK, data));
+            parts.add(new PluginResult(PluginResult.Status.OK, metadata));
+            PluginResult pluginResult = new PluginResult(PluginResult.Status.OK, parts);
+            pluginResult.setKeepCallback(true);
+            callbackContext.sendPluginResult(pluginResult);
+        });
+        frameStreamer = streamer;
+        fragment.addFrameConsumer(streamer, targetWidth, (Exception err) -> {
+            if (err != null) {
+                streamer.stop();
+                if (frameStreamer == streamer) {
+                    frameStreamer = null;
+                }
+                callbackContext.error(err.getMessage());
+            }
+            done.run();
+        });
+    }
+
+    private void stopFrameStream(CallbackContext callbackContext, Runnable done) {
+        JSONObject counters = frameStreamer != null ? frameStreamer.getCounters() : new JSONObject();
+        stopFrameStreamer();
+        callbackContext.success(counters);
+        done.run();
+    }
+
+    private void stopFrameStreamer() {
+        if (frameStreamer == null) {
+            return;
+        }
+        frameStreamer.stop();
+        if (fragment != null) {
+            fragment.removeFrameConsumer(frameStreamer);
+        }
+        frameStreamer = null;
+    }
+
+    /**
+     * Scores the analysis frames and takes a picture once stableFrames consecutive frames are sharp and still enough,
+     * replacing any pending auto capture. Fails when nothing qualifies within timeoutMs.
+     */
+    private void autoCapture(JSONObject options, CallbackContext callbackContext, Runnable done) {
+        if (options == null) {
+            options = new JSONObject();
+        }
+        double threshold = options.optDouble("threshold", DEFAULT_AUTO_CAPTURE_THRESHOLD);
+        double maxMotion = options.optDouble("maxMotion", DEFAULT_AUTO_CAPTURE_MAX_MOTION);
+        int stableFrames = options.optInt("stableFrames", DEFAULT_AUTO_CAPTURE_STABLE_FRAMES);
+        int timeoutMs = options.optInt("timeoutMs", DEFAULT_AUTO_CAPTURE_TIMEOUT_MS);
+        int targetWidth = options.optInt("targetWidth", DEFAULT_ANALYSIS_WIDTH);
+        String flashMode = getFlashMode(options.optBoolean("flash", false), options);
+        if (threshold < 0 || maxMotion < 0 || stableFrames < 1 || timeoutMs < 1) {
+            callbackContext.error("threshold and maxMotion cannot be negative, stableFrames and timeoutMs must be positive");
+            done.run();
+            return;
+        }
+
+        cancelAutoCapture("Superseded by a later autoCapture call");
+        long startedAt = SystemClock.elapsedRealtime();
+        AutoCapture pending = new AutoCapture(threshold, maxMotion, stableFrames, (AutoCapture triggered) ->
+                scheduler.submit("autoCaptureShutter", null, OPEN, "Camera is closed", callbackContext,
+                        (Runnable shutterDone) -> takeAutoCapture(triggered, flashMode, startedAt, callbackContext, shutterDone)));
+        autoCapture = pending;
+        autoCaptureContext = callbackContext;
+        autoCaptureTimeout = () -> {
+            if (pending.cancel()) {
+                clearAutoCapture(pending);
+                callbackContext.error("Auto capture timed out after " + timeoutMs + " ms, best sharpness was "
+                        + Math.round(pending.getBestSharpness()) + " over " + pending.getFramesScored() + " frames");
+            }
+        };
+        mainHandler.postDelayed(autoCaptureTimeout, timeoutMs);
+
+        fragment.addFrameConsumer(pending, targetWidth, (Exception err) -> {
+            if (err != null && pending.cancel()) {
+                clearAutoCapture(pending);
+                callbackContext.error(err.getMessage());
+            }
+            // The capture is pending on the analysis stream, it does not hold the queue
+            done.run();
+        });
+    }
+
+    private void takeAutoCapture(AutoCapture triggered, String flashMode, long startedAt, CallbackContext callbackContext, Runnable done) {
+        clearAutoCapture(triggered);
+        long waitedMs = SystemClock.elapsedRealtime() - startedAt;
+        fragment.takePicture(flashMode, (Exception err, String nativePath, JSONObject details) -> {
+            if (err != null) {
+                callbackContext.error(err.getMessage());
+                return;
+            }
+
+            JSONObject data = new JSONObject();
+            try {
+                data.put("nativePath", nativePath);
+                data.put("sharpness", triggered.getSharpness());
+                data.put("motion", triggered.getMotion());
+                data.put("framesScored", triggered.getFramesScored());
+                data.put("waitedMs", waitedMs);
+                if (details != null && details.has("renditions")) {
+                    data.put("renditions", details.getJSONObject("renditions"));
+                }
+            } catch (JSONException e) {
+                e.printStackTrace();
+                callbackContext.error("Cannot send auto capture data");
+                return;
+            }
+            callbackContext.success(data);
+        });
+        done.run();
+    }
+
+    private void cancelAutoCapture(String reason) {
+        AutoCapture pending = autoCapture;
+        if (pending == null) {
+            return;
+        }
+        CallbackContext callbackContext = autoCaptureContext;
+        clearAutoCapture(pending);
+        if (pending.cancel()) {
+            callbackContext.error(reason);
+        }
+    }
+
+    private void clearAutoCapture(AutoCapture pending) {
+        if (fragment != null) {
+            fragment.removeFrameConsumer(pending);
+        }
+        if (autoCapture == pending) {
+            mainHandler.removeCallbacks(autoCaptureTimeout);
+            autoCapture = null;
+            autoCaptureContext = null;
+            autoCaptureTimeout = null;
+        }
+    }
+
+    private void listCaptures(JSONObject options, CallbackContext callbackContext) {
+        String kind = null;
+        Boolean acknowledged = null;
+        if (options != null) {
+            kind = options.optString("kind", null);
+            if (options.has("acknowledged")) {
+                acknowledged = options.optBoolean("acknowledged");
+            }
+        }
+        callbackContext.success(CaptureStore.getInstance(cordova.getActivity()).list(kind, acknowledged));
+    }
+
     private boolean initVideoCallback(CallbackContext callbackContext) {
         this.videoCallbackContext = callbackContext;
         JSONObject data = new JSONObject();
@@ -116,12 +524,7 @@ public class SimpleCameraPreview extends CordovaPlugin {
         return true;
     }
 
-    private boolean startVideoCapture(JSONObject options, CallbackContext callbackContext) {
-        if (fragment == null) {
-            callbackContext.error("Camera is closed");
-            return true;
-        }
-
+    private void startVideoCapture(JSONObject options, CallbackContext callbackContext, Runnable done) {
         boolean recordWithAudio;
         try {
             recordWithAudio = options.getBoolean("recordWithAudio");
@@ -138,11 +541,19 @@ public class SimpleCameraPreview extends CordovaPlugin {
             videoDuration = 3000;
         }
 
+        int thumbnailMaxEdge = options.optInt("thumbnailMaxEdge", DEFAULT_THUMBNAIL_MAX_EDGE);
+        if (thumbnailMaxEdge < 1) {
+            callbackContext.error("thumbnailMaxEdge must be positive");
+            done.run();
+            return;
+        }
+
         if (recordWithAudio && !PermissionHelper.hasPermission(this, Manifest.permission.RECORD_AUDIO)) {
             String[] permissions = {Manifest.permission.RECORD_AUDIO};
             PermissionHelper.requestPermissions(this, VIDEO_REQUEST_CODE_PERMISSIONS, permissions);
             callbackContext.success();
-            return true;
+            done.run();
+            return;
         }
 
         if (this.videoCallbackContext != null) {
@@ -164,11 +575,25 @@ public class SimpleCameraPreview extends CordovaPlugin {
                     }
                 }
 
-                public void onStop(Boolean recording, String nativePath, String thumbnail) {
+                public void onStop(Boolean recording, String nativePath) {
                     JSONObject data = new JSONObject();
                     try {
                         data.put("recording", false);
                         data.put("nativePath", nativePath);
+                    } catch (JSONException e) {
+                        e.printStackTrace();
+                        videoCallbackContext.error("Cannot send recording data");
+                        return;
+                    }
+                    PluginResult pluginResult = new PluginResult(PluginResult.Status.OK, data);
+                    pluginResult.setKeepCallback(true);
+                    videoCallbackContext.sendPluginResult(pluginResult);
+                }
+
+                public void onThumbnail(String nativePath, String thumbnail) {
+                    JSONObject data = new JSONObject();
+                    try {
+                        data.put("nativePath", nativePath);
                         data.put("thumbnail", thumbnail);
                     } catch (JSONException e) {
                         e.printStackTrace();
@@ -193,112 +618,85 @@ public class SimpleCameraPreview extends CordovaPlugin {
                     pluginResult.setKeepCallback(true);
                     videoCallbackContext.sendPluginResult(pluginResult);
                 }
-            }, recordWithAudio, videoDuration);
+            }, recordWithAudio, videoDuration, thumbnailMaxEdge);
         }
         callbackContext.success();
-        return true;
+        done.run();
     }
 
-    private boolean stopVideoCapture(CallbackContext callbackContext) {
-        if (fragment == null) {
-            callbackContext.error("Camera is closed");
-            return true;
-        }
-
+    private void stopVideoCapture(CallbackContext callbackContext, Runnable done) {
         if (this.videoCallbackContext != null) {
             fragment.stopVideoCapture();
         }
 
         callbackContext.success();
+        done.run();
+    }
+
+    private boolean submitEnable(JSONObject options, CallbackContext callbackContext) {
+        scheduler.submit("enable", null, CLOSED, "Camera already started", callbackContext,
+                (Runnable done) -> enable(options, callbackContext, done));
         return true;
     }
 
-    private boolean enable(JSONObject options, CallbackContext callbackContext) {
+    private void enable(JSONObject options, CallbackContext callbackContext, Runnable done) {
         webView.getView().setBackgroundColor(0x00000000);
         // Request focus on webView as page needs to be clicked/tapped to get focus on page events
         webView.getView().requestFocus();
         if (!PermissionHelper.hasPermission(this, REQUIRED_PERMISSION)) {
             this.enableCallbackContext = callbackContext;
             this.options = options;
+            this.permissionRequestedAt = SystemClock.elapsedRealtime();
             this.requestPermissions();
-            return true;
-        }
-
-        if (fragment != null) {
-            callbackContext.error("Camera already started");
-            return true;
-        }
-
-        int cameraDirection = getCameraDirection(options);
-        int targetSize = 0;
-        try {
-            if (options.getString("targetSize") != null && !options.getString("targetSize").equals("null")) {
-                targetSize = Integer.parseInt(options.getString("targetSize"));
-            }
-        } catch (JSONException | NumberFormatException e) {
-            e.printStackTrace();
-        }
-
-        double aspectRatio = DEFAULT_ASPECT_RATIO; // Default aspect ratio 3:4
-        String aspectRatioOption = null;
-        try {
-            aspectRatioOption = options.getString("aspectRatio");
-        } catch (JSONException e) {
-            Log.e("Error", "enable: " + e.getMessage());
-        }
-        if (aspectRatioOption != null && !aspectRatioOption.equals("null")) {
-            aspectRatio = getAspectRatio(aspectRatioOption);
+            done.run();
+            return;
         }
 
-        String lens = "default";
+        CameraSessionConfig sessionConfig;
         try {
-            if (options.getString("lens") != null && !options.getString("lens").equals("null") && !options.getString("lens").isEmpty()) {
-                lens = options.getString("lens");
-            }
-        } catch (JSONException e) {
-            e.printStackTrace();
+            sessionConfig = CameraSessionConfig.fromJson(options);
+        } catch (IllegalArgumentException e) {
+            callbackContext.error(e.getMessage());
+            done.run();
+            return;
         }
 
-        JSONObject cameraPreviewOptions = new JSONObject();
-        try {
-            cameraPreviewOptions.put("targetSize", targetSize);
-        } catch (JSONException e) {
-            e.printStackTrace();
-        }
-        try {
-            cameraPreviewOptions.put("lens", lens);
-        } catch (JSONException e) {
-            e.printStackTrace();
-        }
-        try {
-            cameraPreviewOptions.put("direction", cameraDirection);
-        } catch (JSONException e) {
-            e.printStackTrace();
-        }
-        try {
-            cameraPreviewOptions.put("aspectRatio", aspectRatio);
-        } catch (JSONException e) {
-            e.printStackTrace();
-        }
+        scheduler.setState(CameraCommandScheduler.State.OPENING);
+        long enableStartedAt = SystemClock.elapsedRealtime();
+        boolean reportTimings = options.optBoolean("reportTimings", false);
+        int cameraDirection = sessionConfig.getDirection();
+        boolean providerWarm = CameraProviderLoader.getInstance().isReady(cameraDirection);
 
-        fragment = new CameraPreviewFragment(cameraPreviewOptions, (err) -> {
+        fragment = new CameraPreviewFragment(sessionConfig, (err) -> {
+            // The fragment stays attached after a start failure, disable is what removes it
+            scheduler.setState(CameraCommandScheduler.State.OPEN);
+            done.run();
             if (err != null) {
                 callbackContext.error(err.getMessage());
                 return;
             }
-            PluginResult pluginResult = new PluginResult(PluginResult.Status.OK, "Camera started");
+            CameraMetrics.recordSince(CameraMetrics.Stage.ENABLE_TOTAL, enableStartedAt);
+            PluginResult pluginResult;
+            if (reportTimings) {
+                JSONObject data = new JSONObject();
+                try {
+                    data.put("message", "Camera started");
+                    data.put("providerWarm", providerWarm);
+                    data.put("providerInitMs", CameraProviderLoader.getInstance().getInitDurationMs());
+                    data.put("enableMs", SystemClock.elapsedRealtime() - enableStartedAt);
+                    data.put("captureMode", fragment != null ? fragment.getEffectiveCaptureMode() : null);
+                } catch (JSONException e) {
+                    e.printStackTrace();
+                }
+                pluginResult = new PluginResult(PluginResult.Status.OK, data);
+            } else {
+                pluginResult = new PluginResult(PluginResult.Status.OK, "Camera started");
+            }
             callbackContext.sendPluginResult(pluginResult);
         });
 
-        try {
-            updateContainerView(options);
-            fetchLocation();
-            return true;
-        } catch (Exception e) {
-            e.printStackTrace();
-            callbackContext.error(e.getMessage());
-            return false;
-        }
+        updateContainerView(options);
+        fetchLocation();
     }
 
     private int getIntegerFromOptions(JSONObject options, String key) {
@@ -345,221 +743,261 @@ public class SimpleCameraPreview extends CordovaPlugin {
         }
     }
 
-    private boolean capture(boolean useFlash, CallbackContext callbackContext) {
-        if (fragment == null) {
-            callbackContext.error("Camera is closed");
-            return true;
+    private void capture(boolean useFlash, JSONObject options, CallbackContext callbackContext, Runnable done) {
+        boolean reportTimings = options != null && options.optBoolean("reportTimings", false);
+        if (options != null && CAPTURE_OUTPUT_BYTES.equals(options.optString("output"))) {
+            captureBytes(getFlashMode(useFlash, options), options, reportTimings, callbackContext);
+            done.run();
+            return;
         }
 
-        fragment.takePicture(useFlash, (Exception err, String nativePath) -> {
+        CameraCallback captureCallback = (Exception err, String nativePath, JSONObject details) -> {
             if (err == null) {
-                PluginResult pluginResult = new PluginResult(PluginResult.Status.OK, nativePath);
+                PluginResult pluginResult;
+                if (reportTimings && details != null) {
+                    try {
+                        details.put("nativePath", nativePath);
+                    } catch (JSONException e) {
+                        e.printStackTrace();
+                    }
+                    pluginResult = new PluginResult(PluginResult.Status.OK, details);
+                } else if (details != null && (details.has("renditions") || details.has("bestShot"))) {
+                    JSONObject data = new JSONObject();
+                    try {
+                        data.put("nativePath", nativePath);
+                        data.putOpt("renditions", details.optJSONObject("renditions"));
+                        data.putOpt("bestShot", details.optJSONObject("bestShot"));
+                    } catch (JSONException e) {
+                        e.printStackTrace();
+                    }
+                    pluginResult = new PluginResult(PluginResult.Status.OK, data);
+                } else {
+                    pluginResult = new PluginResult(PluginResult.Status.OK, nativePath);
+                }
                 pluginResult.setKeepCallback(true);
                 callbackContext.sendPluginResult(pluginResult);
             } else {
                 callbackContext.error(err.getMessage());
             }
+        };
+
+        String bestShotMode = options != null ? options.optString("bestShot", "") : "";
+        if (bestShotMode.isEmpty()) {
+            fragment.takePicture(getFlashMode(useFlash, options), captureCallback);
+        } else if (BestShotSelector.MODE_SHARPEST.equals(bestShotMode) || BestShotSelector.MODE_STABLE.equals(bestShotMode)) {
+            fragment.takeBestShot(bestShotMode, getFlashMode(useFlash, options), options.optInt("windowMs", DEFAULT_BEST_SHOT_WINDOW_MS), captureCallback);
+        } else {
+            callbackContext.error("bestShot must be " + BestShotSelector.MODE_SHARPEST + " or " + BestShotSelector.MODE_STABLE);
+        }
+        // Captures pipeline in ImageCapture, the queue only waits for the request to be issued
+        done.run();
+    }
+
+    /**
+     * Delivers the JPEG as an ArrayBuffer, or its path when it is larger than maxBytes. With reportTimings the
+     * result is sent as a multipart message so the success callback receives the details as a second argument.
+     */
+    private void captureBytes(String flashMode, JSONObject options, boolean reportTimings, CallbackContext callbackContext) {
+        int maxBytes = options.optInt("maxBytes", DEFAULT_CAPTURE_MAX_BYTES);
+        int maxEdge = options.optInt("maxEdge", 0);
+        fragment.takePictureBytes(flashMode, maxBytes, maxEdge, (Exception err, byte[] jpeg, String nativePath, JSONObject details) -> {
+            if (err != null) {
+                callbackContext.error(err.getMessage());
+                return;
+            }
+
+            PluginResult pluginResult = jpeg != null
+                    ? new PluginResult(PluginResult.Status.OK, jpeg)
+                    : new PluginResult(PluginResult.Status.OK, nativePath);
+            if (reportTimings && details != null) {
+                List<PluginResult> parts = new ArrayList<>();
+                parts.add(pluginResult);
+                parts.add(new PluginResult(PluginResult.Status.OK, details));
+                pluginResult = new PluginResult(PluginResult.Status.OK, parts);
+            }
+            pluginResult.setKeepCallback(true);
+            callbackContext.sendPluginResult(pluginResult);
         });
-        return true;
     }
 
-    private boolean deviceHasFlash(CallbackContext callbackContext) {
-        if (fragment == null) {
-            callbackContext.error("Camera is closed");
-            return true;
+    /**
+     * The whole burst holds the command queue, so it gets a timeout growing with the number of pictures.
+     */
+    private static long getBurstTimeoutMs(JSONObject options) {
+        int count = options != null ? options.optInt("count", 5) : 5;
+        int intervalMs = options != null ? options.optInt("intervalMs", 0) : 0;
+        return CameraCommandScheduler.COMMAND_TIMEOUT_MS
+                + Math.max(0, Math.min(count, MAX_BURST_COUNT)) * (Math.max(0, intervalMs) + BURST_PICTURE_TIMEOUT_MS);
+    }
+
+    private void captureBurst(JSONObject options, CallbackContext callbackContext, Runnable done) {
+        if (options == null) {
+            options = new JSONObject();
+        }
+        int count = options.optInt("count", 5);
+        int intervalMs = options.optInt("intervalMs", 0);
+        int maxInFlight = options.optInt("maxInFlight", 2);
+        if (count < 1 || count > MAX_BURST_COUNT) {
+            callbackContext.error("Burst count must be between 1 and " + MAX_BURST_COUNT);
+            done.run();
+            return;
+        }
+        if (maxInFlight < 1 || maxInFlight > MAX_BURST_IN_FLIGHT || intervalMs < 0) {
+            callbackContext.error("maxInFlight must be between 1 and " + MAX_BURST_IN_FLIGHT + " and intervalMs cannot be negative");
+            done.run();
+            return;
+        }
+
+        new BurstCapture(fragment, count, intervalMs, maxInFlight, getFlashMode(options.optBoolean("flash", false), options), new BurstCallback() {
+            @Override
+            public void onFrame(int index, Exception err, String nativePath, long latencyMs) {
+                JSONObject data = new JSONObject();
+                try {
+                    data.put("index", index);
+                    data.put("latencyMs", latencyMs);
+                    if (err != null) {
+                        data.put("error", err.getMessage());
+                    } else {
+                        data.put("nativePath", nativePath);
+                    }
+                } catch (JSONException e) {
+                    e.printStackTrace();
+                    return;
+                }
+                PluginResult pluginResult = new PluginResult(PluginResult.Status.OK, data);
+                pluginResult.setKeepCallback(true);
+                callbackContext.sendPluginResult(pluginResult);
+            }
+
+            @Override
+            public void onCompleted(JSONObject summary) {
+                PluginResult.Status status = summary.has("error") ? PluginResult.Status.ERROR : PluginResult.Status.OK;
+                callbackContext.sendPluginResult(new PluginResult(status, summary));
+                // The whole burst holds the queue so a switch or disable cannot land between its frames
+                done.run();
+            }
+        }).start();
+    }
+
+    private static String getFlashMode(boolean useFlash, JSONObject options) {
+        String flashMode = options != null ? options.optString("flashMode", null) : null;
+        if (CameraPreviewFragment.FLASH_MODE_AUTO.equals(flashMode)
+                || CameraPreviewFragment.FLASH_MODE_ON.equals(flashMode)
+                || CameraPreviewFragment.FLASH_MODE_OFF.equals(flashMode)) {
+            return flashMode;
         }
+        return useFlash ? CameraPreviewFragment.FLASH_MODE_ON : CameraPreviewFragment.FLASH_MODE_OFF;
+    }
 
+    private void deviceHasFlash(CallbackContext callbackContext, Runnable done) {
         fragment.hasFlash((boolean result) -> {
             PluginResult pluginResult = new PluginResult(PluginResult.Status.OK, result);
             callbackContext.sendPluginResult(pluginResult);
+            done.run();
         });
-        return true;
     }
 
-    private boolean deviceHasUltraWideCamera(CallbackContext callbackContext) {
-        if (fragment == null) {
-           callbackContext.error("Camera is closed");
-            return true;
-        }
-
+    private void deviceHasUltraWideCamera(CallbackContext callbackContext, Runnable done) {
         fragment.deviceHasUltraWideCamera((boolean result) -> {
             PluginResult pluginResult = new PluginResult(PluginResult.Status.OK, result);
             callbackContext.sendPluginResult(pluginResult);
+            done.run();
         });
-        return true;
     }
 
-    private boolean deviceHasFrontCamera(CallbackContext callbackContext) {
-        if (fragment == null) {
-            callbackContext.error("Camera is closed");
-            return true;
-        }
-
+    private void deviceHasFrontCamera(CallbackContext callbackContext, Runnable done) {
         fragment.deviceHasFrontCamera((boolean result) -> {
             PluginResult pluginResult = new PluginResult(PluginResult.Status.OK, result);
             callbackContext.sendPluginResult(pluginResult);
+            done.run();
         });
-        return true;
     }
 
-    private boolean torchSwitch(boolean torchState, CallbackContext callbackContext) {
-        if (fragment == null) {
-            callbackContext.error("Camera is closed, cannot switch " + torchState + " torch");
-            return true;
-        }
-
+    private void torchSwitch(boolean torchState, CallbackContext callbackContext, Runnable done) {
         fragment.torchSwitch(torchState, (Exception err) -> {
             if (err == null) {
                 callbackContext.success();
             } else {
                 callbackContext.error(err.getMessage());
             }
+            done.run();
         });
-        return torchState;
-    }
-
-    private boolean disable(CallbackContext callbackContext) {
-        if (fragment == null) {
-            callbackContext.error("Camera already closed");
-            return true;
-        }
-
-        try {
-            if (webViewParent != null) {
-                RunnableFuture<Void> removeViewTask = new FutureTask<>(
-                    new Runnable() {
-                        @Override
-                        public void run() {
-                            webView.getView().bringToFront();
-                            webViewParent = null;
-                            FrameLayout containerView = cordova.getActivity().findViewById(containerViewId);
-                            ((ViewGroup) containerView.getParent()).removeView(containerView);
-                        }
-                    },
-                    null
-                );
-                cordova.getActivity().runOnUiThread(removeViewTask);
-                removeViewTask.get();
-            }
-            cordova.getActivity().getSupportFragmentManager().beginTransaction().remove(fragment).commitAllowingStateLoss();
-            fragment = null;
-
-            callbackContext.success();
-            return true;
-        } catch (Exception e) {
-            e.printStackTrace();
-            callbackContext.error(e.getMessage());
-            return false;
-        }
-    }
-
-    private static int getCameraDirection(JSONObject options) {
-        try {
-            return options.getString("direction").equals("front")
-                    ? CameraSelector.LENS_FACING_FRONT
-                    : CameraSelector.LENS_FACING_BACK;
-        } catch (JSONException e) {
-            return CameraSelector.LENS_FACING_BACK;
-        }
     }
 
-    private static double getAspectRatio(String aspectRatio) {
-        Pattern pattern = Pattern.compile("\\b([1-9]\\d*):([1-9]\\d*)\\b");
-        Matcher matcher = pattern.matcher(aspectRatio);
-        if (!matcher.matches()) {
-            return DEFAULT_ASPECT_RATIO;
+    private void disable(CallbackContext callbackContext, Runnable done) {
+        scheduler.setState(CameraCommandScheduler.State.CLOSING);
+        cancelAutoCapture("Camera is closed");
+        stopFrameStreamer();
+        if (webViewParent != null) {
+            webView.getView().bringToFront();
+            webViewParent = null;
+            FrameLayout containerView = cordova.getActivity().findViewById(containerViewId);
+            ((ViewGroup) containerView.getParent()).removeView(containerView);
         }
+        cordova.getActivity().getSupportFragmentManager().beginTransaction().remove(fragment).commitAllowingStateLoss();
+        fragment = null;
+        frameStatsReporter = null;
+        scheduler.setState(CameraCommandScheduler.State.CLOSED);
 
-        String[] ratioParts = aspectRatio.split(":");
-        double width = Double.parseDouble(ratioParts[0]);
-        double height = Double.parseDouble(ratioParts[1]);
-        return width / height;
+        callbackContext.success();
+        done.run();
     }
 
-    private boolean switchCameraTo(JSONObject options, CallbackContext callbackContext) {
-        if (fragment == null) {
-            callbackContext.error("Camera is closed, cannot switch camera");
-            return true;
-        }
-
-        int cameraDirection = getCameraDirection(options);
-        try {
-            options.put("direction", cameraDirection);
-        } catch (JSONException e) {
-            callbackContext.error("Unable to set direction in options");
-            return true;
-        }
-
-        double aspectRatio = DEFAULT_ASPECT_RATIO; // Default aspect ratio 3:4
-        String aspectRatioOption = null;
-        try {
-            aspectRatioOption = options.getString("aspectRatio");
-        } catch (JSONException e) {
-            Log.e("Error", "switchCameraTo: " + e.getMessage());
-        }
-        if (aspectRatioOption != null && !aspectRatioOption.equals("null")) {
-            aspectRatio = getAspectRatio(aspectRatioOption);
-        }
-
+    private void switchCameraTo(JSONObject options, CallbackContext callbackContext, Runnable done) {
+        CameraSessionConfig sessionConfig;
         try {
-            options.put("aspectRatio", aspectRatio);
-        } catch (JSONException e) {
-            callbackContext.error("Unable to set aspectRatio in options");
-            return true;
+            sessionConfig = fragment.getSessionConfig().withCameraOptions(options);
+        } catch (IllegalArgumentException e) {
+            callbackContext.error(e.getMessage());
+            done.run();
+            return;
         }
-
-        if (aspectRatio != fragment.getAspectRatio()) {
-            try {
-                updateContainerView(options);
-            } catch (Exception e) {
-                Log.e("Error", "switchCameraTo: " + e.getMessage());
-                callbackContext.error("Failed to update camera preview size: " + e.getMessage());
-                return false;
-            }
+        if (sessionConfig.diff(fragment.getSessionConfig()).contains(CameraSessionConfig.Change.ASPECT_RATIO)) {
+            updateContainerView(options);
         }
 
-        fragment.switchCameraTo(options, (boolean result) -> {
-            PluginResult pluginResult = new PluginResult(PluginResult.Status.OK, result);
+        fragment.switchCameraTo(sessionConfig, options.optBoolean("reportTimings", false), (boolean result, JSONObject details) -> {
+            PluginResult pluginResult = details != null
+                    ? new PluginResult(PluginResult.Status.OK, details)
+                    : new PluginResult(PluginResult.Status.OK, result);
             callbackContext.sendPluginResult(pluginResult);
+            done.run();
         });
-        return true;
     }
 
-    private void updateContainerView(JSONObject options) throws Exception {
-        RunnableFuture<Void> updateViewTask = new FutureTask<>(
-            new Runnable() {
-                @Override
-                public void run() {
-                    DisplayMetrics metrics = new DisplayMetrics();
-                    cordova.getActivity().getWindowManager().getDefaultDisplay().getMetrics(metrics);
-
-                    int x = Math.round(getIntegerFromOptions(options, "x") * metrics.density);
-                    int y = Math.round(getIntegerFromOptions(options, "y") * metrics.density);
-                    int width = Math.round(getIntegerFromOptions(options, "width") * metrics.density);
-                    int height = Math.round(getIntegerFromOptions(options, "height") * metrics.density);
-
-                    FrameLayout containerView = cordova.getActivity().findViewById(containerViewId);
-                    if (containerView == null) {
-                        containerView = new FrameLayout(cordova.getActivity().getApplicationContext());
-                        containerView.setId(containerViewId);
-                        FrameLayout.LayoutParams containerLayoutParams = new FrameLayout.LayoutParams(width, height);
-                        containerLayoutParams.setMargins(x, y, 0, 0);
-                        cordova.getActivity().addContentView(containerView, containerLayoutParams);
-                    } else {
-                        FrameLayout.LayoutParams containerLayoutParams = new FrameLayout.LayoutParams(width, height);
-                        containerLayoutParams.setMargins(x, y, 0, 0);
-                        containerView.setLayoutParams(containerLayoutParams);
-                    }
+    /**
+     * Runs on the main thread, from a scheduled command.
+     */
+    private void updateContainerView(JSONObject options) {
+        long trace = CameraTrace.begin("updateContainerView");
+        try {
+            DisplayMetrics metrics = new DisplayMetrics();
+            cordova.getActivity().getWindowManager().getDefaultDisplay().getMetrics(metrics);
+
+            int x = Math.round(getIntegerFromOptions(options, "x") * metrics.density);
+            int y = Math.round(getIntegerFromOptions(options, "y") * metrics.density);
+            int width = Math.round(getIntegerFromOptions(options, "width") * metrics.density);
+            int height = Math.round(getIntegerFromOptions(options, "height") * metrics.density);
+
+            FrameLayout containerView = cordova.getActivity().findViewById(containerViewId);
+            if (containerView == null) {
+                containerView = new FrameLayout(cordova.getActivity().getApplicationContext());
+                containerView.setId(containerViewId);
+                FrameLayout.LayoutParams containerLayoutParams = new FrameLayout.LayoutParams(width, height);
+                containerLayoutParams.setMargins(x, y, 0, 0);
+                cordova.getActivity().addContentView(containerView, containerLayoutParams);
+            } else {
+                FrameLayout.LayoutParams containerLayoutParams = new FrameLayout.LayoutParams(width, height);
+                containerLayoutParams.setMargins(x, y, 0, 0);
+                containerView.setLayoutParams(containerLayoutParams);
+            }
 
-                    cordova.getActivity().getWindow().getDecorView().setBackgroundColor(Color.BLACK);
-                    webView.getView().bringToFront();
-                    cordova.getActivity().getSupportFragmentManager().beginTransaction().replace(containerViewId, fragment).commitAllowingStateLoss();
-                }
-            },
-            null
-        );
-        cordova.getActivity().runOnUiThread(updateViewTask);
-        updateViewTask.get();
+            cordova.getActivity().getWindow().getDecorView().setBackgroundColor(Color.BLACK);
+            webView.getView().bringToFront();
+            cordova.getActivity().getSupportFragmentManager().beginTransaction().replace(containerViewId, fragment).commitAllowingStateLoss();
+        } finally {
+            CameraTrace.end("updateContainerView", trace);
+        }
     }
 
 
@@ -623,7 +1061,8 @@ public class SimpleCameraPreview extends CordovaPlugin {
                     this.showAlertPermissionAlwaysDenied();
                 }
             } else {
-                enable(this.options, this.enableCallbackContext);
+                CameraMetrics.recordSince(CameraMetrics.Stage.ENABLE_PERMISSION, permissionRequestedAt);
+                submitEnable(this.options, this.enableCallbackContext);
             }
         }
         if (requestCode == VIDEO_REQUEST_CODE_PERMISSIONS && this.videoCallbackContext != null) {
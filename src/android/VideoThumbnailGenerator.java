@@ -0,0 +1,108 @@
+package com.spoon.simplecamerapreview;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Rect;
+import android.media.MediaMetadataRetriever;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.UUID;
+
+interface VideoThumbnailCallback {
+    void onThumbnail(String thumbnail);
+}
+
+/**
+ * Writes video thumbnails on the post-capture executor. Frames are extracted already scaled to maxEdge where the
+ * platform allows it; on older releases the full frame is drawn into a bitmap from BitmapPool instead. The gray placeholder
+ * used when no frame can be read is created once per size.
+ */
+public class VideoThumbnailGenerator {
+
+    private static final String TAG = "SimpleCameraPreview";
+    private static final int THUMBNAIL_JPEG_QUALITY = 80;
+    private static Bitmap placeholder;
+
+    private VideoThumbnailGenerator() {
+
+    }
+
+    public static void generate(Context context, File videoFile, int maxEdge, VideoThumbnailCallback callback) {
+        File filesDir = context.getApplicationContext().getFilesDir();
+        PostCaptureExecutor.getInstance().execute(() -> {
+            long trace = CameraTrace.begin("generateVideoThumbnail");
+            String thumbnail;
+            try {
+                thumbnail = generate(filesDir, videoFile, maxEdge);
+            } finally {
+                CameraTrace.end("generateVideoThumbnail", trace);
+            }
+            callback.onThumbnail(thumbnail);
+        });
+    }
+
+    private static String generate(File filesDir, File videoFile, int maxEdge) {
+        File thumbnail = new File(filesDir, "video_thumb_" + UUID.randomUUID().toString() + ".jpg");
+        Bitmap frame = extractFrame(videoFile, maxEdge);
+        Bitmap bitmap = frame != null ? frame : getPlaceholder(maxEdge);
+
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(thumbnail))) {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, THUMBNAIL_JPEG_QUALITY, out);
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to write video thumbnail: " + e.getMessage());
+            return "";
+        } finally {
+            if (frame != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1) {
+                frame.recycle();
+            } else if (frame != null) {
+                BitmapPool.release(frame);
+            }
+        }
+        return Uri.fromFile(thumbnail).toString();
+    }
+
+    private static Bitmap extractFrame(File videoFile, int maxEdge) {
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try {
+            retriever.setDataSource(videoFile.getAbsolutePath());
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1) {
+                return retriever.getScaledFrameAtTime(-1, MediaMetadataRetriever.OPTION_CLOSEST_SYNC, maxEdge, maxEdge);
+            }
+
+            Bitmap fullFrame = retriever.getFrameAtTime(-1, MediaMetadataRetriever.OPTION_CLOSEST_SYNC);
+            if (fullFrame == null) {
+                return null;
+            }
+            float scale = Math.min(1f, (float) maxEdge / Math.max(fullFrame.getWidth(), fullFrame.getHeight()));
+            Bitmap scaled = BitmapPool.acquire(Math.round(fullFrame.getWidth() * scale), Math.round(fullFrame.getHeight() * scale));
+            new Canvas(scaled).drawBitmap(fullFrame, null, new Rect(0, 0, scaled.getWidth(), scaled.getHeight()), null);
+            fullFrame.recycle();
+            return scaled;
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Unable to extract video frame: " + e.getMessage());
+            return null;
+        } finally {
+            try {
+                retriever.release();
+            } catch (IOException | RuntimeException e) {
+                Log.w(TAG, "Unable to release retriever: " + e.getMessage());
+            }
+        }
+    }
+
+    private static synchronized Bitmap getPlaceholder(int maxEdge) {
+        if (placeholder == null || placeholder.getWidth() != maxEdge) {
+            placeholder = Bitmap.createBitmap(maxEdge, maxEdge, Bitmap.Config.RGB_565);
+            placeholder.eraseColor(Color.DKGRAY);
+        }
+        return placeholder;
+    }
+}
@@ -0,0 +1,47 @@
+package com.spoon.simplecamerapreview;
+
+/**
+ * Converts NV21 frames to RGBA with the BT.601 limited range coefficients in fixed point.
+ * This class has no Android dependencies so it can be exercised on the JVM.
+ */
+public final class YuvConverter {
+
+    private YuvConverter() {
+    }
+
+    /**
+     * Writes width x height RGBA pixels, 4 bytes each, into rgba. Both sides must be even. nv21 holds the luma
+     * followed by interleaved V and U samples for every 2 x 2 block.
+     */
+    public static void nv21ToRgba(byte[] nv21, int width, int height, byte[] rgba) {
+        int chromaOffset = width * height;
+        int out = 0;
+        for (int row = 0; row < height; row++) {
+            int lumaIndex = row * width;
+            int chromaIndex = chromaOffset + (row >> 1) * width;
+            for (int col = 0; col < width; col += 2) {
+                int v = (nv21[chromaIndex++] & 0xFF) - 128;
+                int u = (nv21[chromaIndex++] & 0xFF) - 128;
+                int red = 1634 * v + 512;
+                int green = -833 * v - 400 * u + 512;
+                int blue = 2066 * u + 512;
+
+                int y = ((nv21[lumaIndex++] & 0xFF) - 16) * 1192;
+                rgba[out++] = clamp((y + red) >> 10);
+                rgba[out++] = clamp((y + green) >> 10);
+                rgba[out++] = clamp((y + blue) >> 10);
+                rgba[out++] = (byte) 0xFF;
+
+                y = ((nv21[lumaIndex++] & 0xFF) - 16) * 1192;
+                rgba[out++] = clamp((y + red) >> 10);
+                rgba[out++] = clamp((y + green) >> 10);
+                rgba[out++] = clamp((y + blue) >> 10);
+                rgba[out++] = (byte) 0xFF;
+            }
+        }
+    }
+
+    private static byte clamp(int value) {
+        return (byte) (value < 0 ? 0 : value > 255 ? 255 : value);
+    }
+}
@@ -56,7 +56,15 @@ SimpleCameraPreview.disable = function (onSuccess, onError) {
 SimpleCameraPreview.capture = function (options, onSuccess, onError) {
   options = options || {};
   options.flash = options.flash || false;
-  exec(onSuccess, onError, PLUGIN_NAME, "capture", [options.flash]);
+  exec(onSuccess, onError, PLUGIN_NAME, "capture", [options.flash, options]);
+};
+
+SimpleCameraPreview.captureBurst = function (options, onFrame, onError) {
+  options = options || {};
+  options.count = options.count || 5;
+  options.intervalMs = options.intervalMs || 0;
+  options.maxInFlight = options.maxInFlight || 2;
+  exec(onFrame, onError, PLUGIN_NAME, "captureBurst", [options]);
 };
 
 SimpleCameraPreview.setSize = function (options, onSuccess, onError) {
@@ -86,4 +94,58 @@ SimpleCameraPreview.deviceHasFrontCamera = function (onSuccess, onError) {
   exec(onSuccess, onError, PLUGIN_NAME, "deviceHasFrontCamera", []);
 }
 
+SimpleCameraPreview.prewarm = function (options, onSuccess, onError) {
+  options = options || {};
+  options.direction = options.direction || "back";
+  exec(onSuccess, onError, PLUGIN_NAME, "prewarm", [options]);
+};
+
+SimpleCameraPreview.startAnalysis = function (options, onStats, onError) {
+  exec(onStats, onError, PLUGIN_NAME, "startAnalysis", [options || {}]);
+};
+
+SimpleCameraPreview.stopAnalysis = function (onSuccess, onError) {
+  exec(onSuccess, onError, PLUGIN_NAME, "stopAnalysis", []);
+};
+
+SimpleCameraPreview.startFrameStream = function (options, onFrame, onError) {
+  exec(onFrame, onError, PLUGIN_NAME, "startFrameStream", [options || {}]);
+};
+
+SimpleCameraPreview.stopFrameStream = function (onSuccess, onError) {
+  exec(onSuccess, onError, PLUGIN_NAME, "stopFrameStream", []);
+};
+
+SimpleCameraPreview.autoCapture = function (options, onSuccess, onError) {
+  exec(onSuccess, onError, PLUGIN_NAME, "autoCapture", [options || {}]);
+};
+
+SimpleCameraPreview.listCaptures = function (options, onSuccess, onError) {
+  exec(onSuccess, onError, PLUGIN_NAME, "listCaptures", [options || {}]);
+};
+
+SimpleCameraPreview.deleteCaptures = function (nativePaths, onSuccess, onError) {
+  exec(onSuccess, onError, PLUGIN_NAME, "deleteCaptures", [nativePaths || []]);
+};
+
+SimpleCameraPreview.acknowledgeCaptures = function (nativePaths, onSuccess, onError) {
+  exec(onSuccess, onError, PLUGIN_NAME, "acknowledgeCaptures", [nativePaths || []]);
+};
+
+SimpleCameraPreview.getCommandTimings = function (onSuccess, onError) {
+  exec(onSuccess, onError, PLUGIN_NAME, "getCommandTimings", []);
+};
+
+SimpleCameraPreview.getMetrics = function (onSuccess, onError) {
+  exec(onSuccess, onError, PLUGIN_NAME, "getMetrics", []);
+};
+
+SimpleCameraPreview.resetMetrics = function (onSuccess, onError) {
+  exec(onSuccess, onError, PLUGIN_NAME, "resetMetrics", []);
+};
+
+SimpleCameraPreview.dumpTrace = function (onSuccess, onError) {
+  exec(onSuccess, onError, PLUGIN_NAME, "dumpTrace", []);
+};
+
 module.exports = SimpleCameraPreview;